@@ -40,12 +40,41 @@ public class GaeaConst {
 	public static final int DEFAULT_MAX_CURRENT_USER_COUNT = 2000;
 	// 1m
 	public static final int DEFAULT_MAX_PAKAGE_SIZE = 1024 * 1024;
+	// 64m,接收数据包的默认上限,不小于maxPakageSize
+	public static final int DEFAULT_MAX_RECEIVE_SIZE = 64 * 1024 * 1024;
 	// 10kb
 	public static final int DEFAULT_BUFFER_SIZE = 10 * 1024;
 	// 60s
 	public static final int DEFAULT_DEAD_TIMEOUT = 60000;
+	// 30s,服务器恢复后流量从10%线性增加到100%的时间
+	public static final int DEFAULT_SLOW_START = 30000;
+	// 异常服务器摘除的统计周期10s
+	public static final int EJECTION_INTERVAL = 10000;
+	// 统计周期内请求数少于此值不参与摘除判断
+	public static final int EJECTION_MIN_REQUESTS = 20;
+	// 成功率低于此值时摘除
+	public static final float EJECTION_SUCCESS_RATE = 0.8f;
+	// 延迟高于其它服务器中位数的倍数且超过最小延迟时摘除
+	public static final float EJECTION_LATENCY_FACTOR = 3f;
+	public static final int EJECTION_MIN_LATENCY = 50;
+	// 摘除时间从30s起按次数翻倍,最长5分钟
+	public static final int EJECTION_BASE_TIME = 30000;
+	public static final int EJECTION_MAX_TIME = 300000;
+	// 最多摘除一半的服务器
+	public static final float EJECTION_MAX_PERCENT = 0.5f;
 
 	public static final boolean DEFAULT_PROTECTED = true;
+	// 单个连接上同时等待响应的请求数
+	public static final int DEFAULT_WINDOW_SIZE = 1024;
+	// 多路复用的共享连接数,0为关闭
+	public static final int DEFAULT_MULTIPLEX = 0;
+
+	// 对冲请求的默认延迟取响应延迟的P95
+	public static final double HEDGE_PERCENTILE = 0.95;
+	// 对冲请求数不超过可对冲调用数的10%
+	public static final int HEDGE_PERCENT = 10;
+	// 对冲预算只统计最近10秒内的调用
+	public static final int HEDGE_WINDOW = 10000;
 
 	public static final String VERSION_FLAG = "Gaea Client v1.0.0:";
 }
@@ -24,12 +24,18 @@ import java.net.Socket;
 import java.nio.ByteBuffer;
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.nio.channels.SelectionKey;
 import java.nio.channels.SocketChannel;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.nio.channels.NotYetConnectedException;
 
 import com.bj58.spat.gaea.client.configuration.commmunication.SocketPoolProfile;
-import com.bj58.spat.gaea.client.utility.AutoResetEvent;
+import com.bj58.spat.gaea.client.utility.IAsyncHandler;
 import com.bj58.spat.gaea.client.utility.logger.ILog;
 import com.bj58.spat.gaea.client.utility.logger.LogFactory;
 import com.bj58.spat.gaea.protocol.exception.DataOverFlowException;
@@ -47,33 +53,66 @@ import com.bj58.spat.gaea.protocol.utility.ProtocolConst;
 public class CSocket {
 
     private static final ILog logger = LogFactory.getLogger(CSocket.class);
+    private final static int T_COUNT = Runtime.getRuntime().availableProcessors();//CPU核数
+    private final static int WRITE_BATCH_SIZE = 64;//一次聚集写的最大缓冲区数
+    /**
+     * 异步接收的回调线程池,反序列化等耗时操作不在Reactor线程中执行;与超时线程一样为守护线程,不阻止JVM退出
+     */
+    private static final ExecutorService callbackPool = Executors.newFixedThreadPool(T_COUNT, new ThreadRenameFactory("Async Callback Thread", true));
+    private static final ScheduledExecutorService timeoutScheduler = Executors.newSingleThreadScheduledExecutor(new ThreadRenameFactory("Async Timeout Thread", true));
    
     private byte[] DESKey;//DES密钥
     private boolean rights;//是否启用认证
     private Socket socket;
     private ScoketPool pool;
     private SocketChannel channel;
-    private ByteBuffer receiveBuffer, sendBuffer;
+    private ByteBuffer receiveBuffer;
     private SocketPoolProfile socketConfig;
-    private boolean _inPool = false;
+    private volatile boolean _inPool = false;
     private boolean _connecting = false;
     private DataReceiver dataReceiver = null;
-    private boolean waitDestroy = false;
-    private final Object sendLockHelper = new Object();
+    private Reactor reactor = null;
+    private volatile SelectionKey selectionKey = null;
+    private volatile boolean waitDestroy = false;
+    private volatile boolean shared = false;
+    /**
+     * 待发送的数据包,由抢到flushing的线程合并写出
+     */
+    private final ConcurrentLinkedQueue<ByteBuffer[]> writeQueue = new ConcurrentLinkedQueue<ByteBuffer[]>();
+    private final AtomicBoolean flushing = new AtomicBoolean(false);
+    /**
+     * 一次聚集写的缓冲区,只由持有flushing的线程访问;通道写满时保留未写完部分等待OP_WRITE
+     */
+    private final ByteBuffer[] writeBatch = new ByteBuffer[WRITE_BATCH_SIZE];
+    private int batchOffset = 0;
+    private int batchLength = 0;
     private final Object receiveLockHelper = new Object();
-    private CByteArrayOutputStream receiveData = new CByteArrayOutputStream();
-    private ConcurrentHashMap<Integer, WindowData> WaitWindows = new ConcurrentHashMap<Integer, WindowData>();
+    private final FrameDecoder frameDecoder;
+    private final WindowTable waitWindows;
 
     protected CSocket(InetSocketAddress endpoint, ScoketPool _pool, SocketPoolProfile config) throws IOException {
         this.socketConfig = config;
         this.pool = _pool;
-        channel = SocketChannel.open(endpoint);
-        channel.configureBlocking(false);
+        channel = SocketChannel.open();
         socket = channel.socket();
-        channel.socket().setSendBufferSize(config.getSendBufferSize());
-        channel.socket().setReceiveBufferSize(config.getRecvBufferSize());
+        socket.setSendBufferSize(config.getSendBufferSize());
+        socket.setReceiveBufferSize(config.getRecvBufferSize());
+        try {
+            //连接超时由connectionTimeout控制,避免对端无响应时一直阻塞
+            socket.connect(endpoint, config.getConnectionTimeout());
+        } catch (IOException ex) {
+            channel.close();
+            throw ex;
+        }
+        channel.configureBlocking(false);
         receiveBuffer = ByteBuffer.allocate(config.getBufferSize());
-        sendBuffer = ByteBuffer.allocate(config.getMaxPakageSize());
+        frameDecoder = new FrameDecoder(config.getMaxReceiveSize(), new FrameDecoder.OverflowHandler() {
+            @Override
+            public void frameOverflow(int sessionId, int totalLen) {
+                failOverflow(sessionId, totalLen);
+            }
+        });
+        waitWindows = new WindowTable(config.getWindowSize());
         _connecting = true;
         dataReceiver = DataReceiver.instance();
         dataReceiver.RegSocketChannel(this);
@@ -84,50 +123,126 @@ public class CSocket {
 		logger.info("create a new connection :" + this.toString());
 	}
 
+	/**
+	 * 数据包入队后由当前线程或正在写的线程发送,多个请求可共享同一连接
+	 * @return 数据包大小
+	 */
 	public int send(byte[] data) throws IOException, Throwable {
-		try {
-			synchronized (sendLockHelper) {
-				int pakageSize = data.length + ProtocolConst.P_END_TAG.length;
-				if (sendBuffer.capacity() < pakageSize) {
-					throw new DataOverFlowException("数据包(size:" + pakageSize + ")超过最大限制,请修改或增加配置文件中的<SocketPool maxPakageSize=\""
-							+ socketConfig.getMaxPakageSize() + "\"/>节点属性！");
-				}
+		return send(new ByteBuffer[] { ByteBuffer.wrap(data), ByteBuffer.wrap(ProtocolConst.P_END_TAG) });
+	}
 
-				int count = 0;
-				sendBuffer.clear();
-				sendBuffer.put(data);
-				sendBuffer.put(ProtocolConst.P_END_TAG);
-				sendBuffer.flip();
+	/**
+	 * 发送由多个缓冲区组成的数据包(如消息头、消息体、分界符),缓冲区直接聚集写出,不再拷贝
+	 * @param frame 完整的数据包,需包含分界符
+	 * @return 数据包大小
+	 */
+	public int send(ByteBuffer[] frame) throws IOException, Throwable {
+		int pakageSize = 0;
+		for (ByteBuffer buffer : frame) {
+			pakageSize += buffer.remaining();
+		}
+		if (socketConfig.getMaxPakageSize() < pakageSize) {
+			throw new DataOverFlowException("数据包(size:" + pakageSize + ")超过最大限制,请修改或增加配置文件中的<SocketPool maxPakageSize=\""
+					+ socketConfig.getMaxPakageSize() + "\"/>节点属性！");
+		}
+		if (frame.length > WRITE_BATCH_SIZE) {
+			throw new IllegalArgumentException("too many buffers in one frame:" + frame.length);
+		}
+		writeQueue.offer(frame);
+		flush();
+		return pakageSize;
+	}
 
-				int retryCount = 0;
-				while (sendBuffer.hasRemaining()) {
-					count += channel.write(sendBuffer);
+	/**
+	 * 没有其他线程在写时,写出队列中所有数据包;释放flushing后再检查一次,避免数据包滞留在队列中
+	 */
+	private void flush() throws IOException {
+		while (!writeQueue.isEmpty() && flushing.compareAndSet(false, true)) {
+			if (!drain()) {
+				//通道写满,flushing由Reactor在可写后继续持有并释放
+				return;
+			}
+		}
+	}
 
-					if (retryCount++ > 10) {
-						throw new Exception("retry write count(" + retryCount + ") above 10");
-					}
+	/**
+	 * @return true 队列已写完并释放了flushing;false 通道写满,已注册OP_WRITE
+	 */
+	private boolean drain() throws IOException {
+		boolean release = true;
+		try {
+			while (true) {
+				if (batchLength == 0 && !fillBatch()) {
+					return true;
+				}
+				channel.write(writeBatch, batchOffset, batchLength);
+				while (batchLength > 0 && !writeBatch[batchOffset].hasRemaining()) {
+					writeBatch[batchOffset++] = null;
+					batchLength--;
+				}
+				if (batchLength > 0) {
+					release = false;
+					reactor.interestWrite(this);
+					return false;
 				}
-				return count;
 			}
 		} catch (IOException ex) {
 			_connecting = false;
+			clearWrite();
 			throw ex;
 		} catch (NotYetConnectedException ex) {
 			_connecting = false;
+			clearWrite();
 			throw ex;
+		} finally {
+			if (release) {
+				flushing.set(false);
+			}
+		}
+	}
+
+	private boolean fillBatch() {
+		batchOffset = 0;
+		ByteBuffer[] frame;
+		while ((frame = writeQueue.peek()) != null && batchLength + frame.length <= writeBatch.length) {
+			writeQueue.poll();
+			for (ByteBuffer buffer : frame) {
+				writeBatch[batchLength++] = buffer;
+			}
+		}
+		return batchLength > 0;
+	}
+
+	private void clearWrite() {
+		writeQueue.clear();
+		for (int i = 0; i < writeBatch.length; i++) {
+			writeBatch[i] = null;
+		}
+		batchOffset = 0;
+		batchLength = 0;
+	}
+
+	/**
+	 * 通道可写时由Reactor调用,继续写出未完成的数据包
+	 */
+	protected void writeHandle() throws IOException {
+		if (drain()) {
+			flush();
 		}
 	}
 
     public byte[] receive(int sessionId, int queueLen) throws IOException, TimeoutException, Exception {
-        WindowData wd = WaitWindows.get(sessionId);
-        if (wd == null) {
+        WindowData wd = waitWindows.get(sessionId);
+        if (wd == null || wd.getWaiter() != Thread.currentThread()) {
             throw new Exception("Need invoke 'registerRec' method before invoke 'receive' method!");
         }
-        AutoResetEvent event = wd.getEvent();
         int timeout = getReadTimeout(socketConfig.getReceiveTimeout(), queueLen);
-        if (!event.waitOne(timeout)) {
+        if (!wd.await(timeout)) {
             throw new TimeoutException("Receive data timeout or error!timeout:" + timeout + "ms,queue length:" + queueLen);
         }
+        if (wd.getException() != null) {
+            throw wd.getException();
+        }
         byte[] data = wd.getData();
         int offset = SFPStruct.Version;
         int len = ByteConverter.bytesToIntLittleEndian(data, offset);
@@ -137,14 +252,48 @@ public class CSocket {
         return data;
     }
 
-    public void registerRec(int sessionId) {
-        AutoResetEvent event = new AutoResetEvent();
-        WindowData wd = new WindowData(event);
-        WaitWindows.put(sessionId, wd);
+    /**
+     * 注册同步接收,之后由同一线程调用receive等待
+     * @param sessionId
+     * @throws Exception 该连接上等待中的请求超过windowSize
+     */
+    public void registerRec(int sessionId) throws Exception {
+        waitWindows.register(sessionId, null);
+    }
+
+    /**
+     * 注册异步接收,收到对应sessionId的数据包或超时后回调handler(只回调一次)
+     * @param sessionId
+     * @param handler
+     * @param queueLen
+     */
+    public void registerRec(final int sessionId, IAsyncHandler<byte[]> handler, final int queueLen) throws Exception {
+        final WindowData wd = waitWindows.register(sessionId, handler);
+        final int timeout = getReadTimeout(socketConfig.getReceiveTimeout(), queueLen);
+        wd.setTimeoutFuture(timeoutScheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                if (wd.disarm(sessionId)) {
+                    complete(wd, null, new TimeoutException("Receive data timeout or error!timeout:" + timeout + "ms,queue length:" + queueLen));
+                    checkShrink();
+                }
+            }
+        }, timeout, TimeUnit.MILLISECONDS));
     }
 
     public void unregisterRec(int sessionId) {
-        WaitWindows.remove(sessionId);
+        WindowData wd = waitWindows.get(sessionId);
+        if (wd != null) {
+            if (wd.disarm(sessionId)) {
+                wd.cancelTimeout();
+                waitWindows.free(wd);
+            } else if (wd.getWaiter() == Thread.currentThread()) {
+                //同步接收的槽位由等待线程释放,异步槽位由完成方释放
+                wd.awaitDone();
+                waitWindows.free(wd);
+            }
+        }
+        checkShrink();
     }
 
     public void close() {
@@ -173,6 +322,55 @@ public class CSocket {
             channel.close();
         }
         _connecting = false;
+        for (int i = 0; i < waitWindows.capacity(); i++) {
+            WindowData wd = waitWindows.slotAt(i);
+            if (wd == null) {
+                continue;
+            }
+            int sessionId = wd.armedSessionId();
+            if (sessionId != 0 && wd.disarm(sessionId)) {
+                complete(wd, null, new IOException("connection is closed:" + this.toString()));
+            }
+        }
+    }
+
+    /**
+     * 已disarm的槽位:同步接收唤醒等待线程,异步接收释放槽位后在回调线程中通知handler
+     */
+    private void complete(WindowData wd, byte[] data, final Exception ex) {
+        final IAsyncHandler<byte[]> handler = wd.getHandler();
+        if (handler == null) {
+            wd.complete(data, ex);
+            return;
+        }
+        wd.cancelTimeout();
+        waitWindows.free(wd);
+        final byte[] result = data;
+        callbackPool.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (ex == null) {
+                    handler.messageReceived(result);
+                } else {
+                    handler.exceptionCaught(ex);
+                }
+            }
+        });
+    }
+
+    /**
+     * 响应超过接收上限时直接结束对应的请求,不再等到超时
+     */
+    private void failOverflow(int sessionId, int totalLen) {
+        WindowData wd = waitWindows.get(sessionId);
+        if (wd != null && wd.disarm(sessionId)) {
+            boolean async = wd.getHandler() != null;
+            complete(wd, null, new DataOverFlowException("数据包(size:" + totalLen + ")超过最大限制,请修改或增加配置文件中的<SocketPool maxReceiveSize=\""
+                    + socketConfig.getMaxReceiveSize() + "\"/>节点属性！"));
+            if (async) {
+                checkShrink();
+            }
+        }
     }
 
     private int getReadTimeout(int baseReadTimeout, int queueLen) {
@@ -204,8 +402,6 @@ public class CSocket {
         return result;
     }
     
-    private int index = 0;
-    
     private boolean handling = false;
 
     protected void frameHandle() throws Exception {
@@ -215,12 +411,6 @@ public class CSocket {
         synchronized (receiveLockHelper) {
             handling = true;
             try {
-                if (waitDestroy && isIdle()) {
-                    logger.info("Shrinking the connection:" + this.toString());
-                    dispose(true);
-                    return;
-                }
-                receiveBuffer.clear();
                 try {
                 	int re = channel.read(receiveBuffer);
                 	if (re < 0) {
@@ -236,37 +426,25 @@ public class CSocket {
                     throw e;
                 }
                 receiveBuffer.flip();
-                if (receiveBuffer.remaining() == 0) {
-                    return;
-                }
-                
-                while (receiveBuffer.remaining() > 0) {
-                    byte b = receiveBuffer.get();
-                    receiveData.write(b);
-                    if (b == ProtocolConst.P_END_TAG[index]) {
-                        index++;
-                        if (index == ProtocolConst.P_END_TAG.length) {
-                            byte[] pak = receiveData.toByteArray(0, receiveData.size() - ProtocolConst.P_END_TAG.length);
-                            int pSessionId = ByteConverter.bytesToIntLittleEndian(pak, SFPStruct.Version + SFPStruct.TotalLen);
-                            WindowData wd = WaitWindows.get(pSessionId);
-                            if (wd != null) {
-                            	wd.setData(pak);
-                            	wd.getEvent().set();
-                            }
-                            index = 0;
-                            receiveData.reset();
-                            continue;
+                try {
+                    byte[] pak = null;
+                    while ((pak = frameDecoder.decode(receiveBuffer)) != null) {
+                        int pSessionId = ByteConverter.bytesToIntLittleEndian(pak, SFPStruct.Version + SFPStruct.TotalLen);
+                        WindowData wd = waitWindows.get(pSessionId);
+                        if (wd != null && wd.disarm(pSessionId)) {
+                        	boolean async = wd.getHandler() != null;
+                        	complete(wd, pak, null);
+                        	if (async) {
+                        		checkShrink();
+                        	}
                         }
-                    } else if (index != 0) {
-                    	if(b == ProtocolConst.P_END_TAG[0]) {
-                    		index = 1;
-                    	} else {
-                    		index = 0;
-                    	}
                     }
+                } finally {
+                    receiveBuffer.compact();
                 }
             } catch(Exception ex){
-            	index = 0;
+            	frameDecoder.reset();
+            	receiveBuffer.clear();
             	throw ex;
             }finally {
                 handling = false;
@@ -312,11 +490,45 @@ public class CSocket {
      * 该链接是否是空闲状态
      */
     protected boolean isIdle() {
-        return !(WaitWindows.size() > 0);
+        return !(waitWindows.size() > 0);
     }
 
     protected void waitDestroy() {
         this.waitDestroy = true;
+        checkShrink();
+    }
+
+    /*
+     * 连接只在有数据可读时才会被Reactor调度,所以待回收的连接在最后一个请求结束时回收
+     */
+    private void checkShrink() {
+        if (waitDestroy && isIdle()) {
+            logger.info("Shrinking the connection:" + this.toString());
+            dispose(true);
+        }
+    }
+
+    /**
+     * 多路复用模式下的共享连接,不借出、不回收
+     */
+    protected boolean isShared() {
+        return shared;
+    }
+
+    protected void setShared(boolean shared) {
+        this.shared = shared;
+    }
+
+    protected void setReactor(Reactor reactor) {
+        this.reactor = reactor;
+    }
+
+    protected SelectionKey getSelectionKey() {
+        return selectionKey;
+    }
+
+    protected void setSelectionKey(SelectionKey selectionKey) {
+        this.selectionKey = selectionKey;
     }
     
     public boolean isRights() {
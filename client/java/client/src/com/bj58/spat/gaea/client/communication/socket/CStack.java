@@ -0,0 +1,228 @@
+/*
+ *  Copyright Beijing 58 Information Technology Co.,Ltd.
+ *
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package com.bj58.spat.gaea.client.communication.socket;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * CStack
+ * 空闲连接按线程分段存放在多个无锁栈(Treiber stack)中,连接总数用CAS计数,
+ * 借出、归还、回收均不加锁
+ *
+ * @author Service Platform Architecture Team (spat@58.com)
+ */
+class CStack {
+
+    private final static int STRIPES = stripes();
+    private final int _duration;
+    private final int _minConn;
+    @SuppressWarnings("unchecked")
+    private final AtomicReference<Node>[] stacks = new AtomicReference[STRIPES];
+    private final AtomicInteger idle = new AtomicInteger(0);
+    /**
+     * 已建立和正在建立的连接数
+     */
+    private final AtomicInteger total = new AtomicInteger(0);
+    private final ConcurrentLinkedQueue<Thread> waiters = new ConcurrentLinkedQueue<Thread>();
+    private final CopyOnWriteArrayList<CSocket> _AllSocket = new CopyOnWriteArrayList<CSocket>();
+
+    public CStack(int _duration, int _minConn) {
+        this._duration = _duration;
+        this._minConn = _minConn;
+        for (int i = 0; i < stacks.length; i++) {
+            stacks[i] = new AtomicReference<Node>();
+        }
+    }
+
+    private static int stripes() {
+        int n = 1;
+        while (n < Runtime.getRuntime().availableProcessors() && n < 16) {
+            n <<= 1;
+        }
+        return n;
+    }
+
+    private static class Node {
+        final CSocket socket;
+        Node next;
+
+        Node(CSocket socket) {
+            this.socket = socket;
+        }
+    }
+
+    private int stripe() {
+        return (int) Thread.currentThread().getId() & (STRIPES - 1);
+    }
+
+    public CSocket enqueue(CSocket element) {
+        Node node = new Node(element);
+        AtomicReference<Node> top = stacks[stripe()];
+        Node head;
+        do {
+            head = top.get();
+            node.next = head;
+        } while (!top.compareAndSet(head, node));
+        idle.incrementAndGet();
+        Thread waiter = waiters.peek();
+        if (waiter != null) {
+            LockSupport.unpark(waiter);
+        }
+        return element;
+    }
+
+    /**
+     * 非阻塞借出,先取本线程所在分段,再依次尝试其它分段;已断开的连接直接丢弃
+     */
+    public CSocket dequeue() {
+        int start = stripe();
+        for (int i = 0; i < STRIPES; i++) {
+            AtomicReference<Node> top = stacks[(start + i) & (STRIPES - 1)];
+            Node head;
+            while ((head = top.get()) != null) {
+                if (top.compareAndSet(head, head.next)) {
+                    idle.decrementAndGet();
+                    if (head.socket.connecting()) {
+                        return head.socket;
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 限时等待其它线程归还连接
+     */
+    public CSocket dequeue(long time) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(time);
+        Thread current = Thread.currentThread();
+        waiters.offer(current);
+        try {
+            while (true) {
+                CSocket csocket = dequeue();
+                if (csocket != null) {
+                    return csocket;
+                }
+                long remain = deadline - System.nanoTime();
+                if (remain <= 0) {
+                    return null;
+                }
+                LockSupport.parkNanos(this, remain);
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+            }
+        } finally {
+            waiters.remove(current);
+            //还有空闲连接时唤醒下一个等待者
+            Thread next = waiters.peek();
+            if (next != null && idle.get() > 0) {
+                LockSupport.unpark(next);
+            }
+        }
+    }
+
+    /**
+     * 占用一个连接名额
+     * @return false 已达到max
+     */
+    public boolean reserve(int max) {
+        int current;
+        while ((current = total.get()) < max) {
+            if (total.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public void unreserve() {
+        total.decrementAndGet();
+    }
+
+    public void register(CSocket socket) {
+        _AllSocket.add(socket);
+    }
+
+    /**
+     * 栈中已断开的连接在借出时丢弃
+     */
+    public boolean remove(CSocket socket) {
+        boolean removed = _AllSocket.remove(socket);
+        if (removed) {
+            total.decrementAndGet();
+        }
+        return removed;
+    }
+
+    public int size() {
+        return idle.get();
+    }
+
+    public int getTotal() {
+        return total.get();
+    }
+
+    public List<CSocket> getAllSocket() {
+        return _AllSocket;
+    }
+
+    private final AtomicLong lastCheckTime = new AtomicLong(System.currentTimeMillis());
+    private final AtomicInteger freeCount = new AtomicInteger(-1);
+    private final AtomicInteger shrinkCount = new AtomicInteger(0);
+
+    /**
+     * 统计每个周期内的最少空闲连接数,下个周期回收这么多连接(不低于最小连接数)
+     */
+    public boolean shrink() {
+        int count;
+        while ((count = shrinkCount.get()) > 0) {
+            if (shrinkCount.compareAndSet(count, count - 1)) {
+                return true;
+            }
+        }
+        long now = System.currentTimeMillis();
+        long last = lastCheckTime.get();
+        if ((now - last) > _duration) {
+            if (lastCheckTime.compareAndSet(last, now)) {
+                int free = freeCount.getAndSet(-1);
+                int currTotal = getTotal();
+                if (free > 0 && currTotal > _minConn) {
+                    shrinkCount.set(Math.min(currTotal - _minConn, free));
+                }
+            }
+            return false;
+        }
+        int currFreeCount = this.size();
+        int free;
+        while (((free = freeCount.get()) < 0 || currFreeCount < free) && !freeCount.compareAndSet(free, currFreeCount)) {
+        }
+        return false;
+    }
+}
@@ -20,33 +20,37 @@
  */
 package com.bj58.spat.gaea.client.communication.socket;
 
-import com.bj58.spat.gaea.client.utility.logger.ILog;
-import com.bj58.spat.gaea.client.utility.logger.LogFactory;
-
 import java.io.IOException;
 import java.nio.channels.ClosedChannelException;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * DataReceiver
  * 
+ * 基于Selector的Reactor模型,每个CSocket的SocketChannel注册到其中一个Reactor的OP_READ上,
+ * 只有在通道有数据可读时才调用frameHandle(),取代原来每1ms轮询所有连接的方式
+ * 通道写满时临时关注OP_WRITE,可写后由Reactor继续写出未完成的数据包
+ * 
  * @author Service Platform Architecture Team (spat@58.com)
  */
 class DataReceiver {
 
+    private final static int R_COUNT = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);//Reactor线程数
     private static DataReceiver _DataReceiver = null;
-    List<CSocket> sockets = new ArrayList<CSocket>();
     private final static Object LockHelper = new Object();
-
-    private DataReceiver() {
-        Worker worker = new Worker(sockets);
-        Thread thread = new Thread(worker);
-        thread.setDaemon(true);
-        thread.start();
+    private final Reactor[] reactors;
+    private final AtomicInteger rr = new AtomicInteger(0);
+
+    private DataReceiver() throws IOException {
+        reactors = new Reactor[R_COUNT];
+        for (int i = 0; i < reactors.length; i++) {
+            reactors[i] = new Reactor(Selector.open());
+            Thread thread = new Thread(reactors[i], "Gaea DataReceiver Reactor-" + i);
+            thread.setDaemon(true);
+            thread.start();
+        }
     }
 
     public static DataReceiver instance() throws ClosedChannelException, IOException {
@@ -60,86 +64,17 @@ class DataReceiver {
         return _DataReceiver;
     }
 
-    public synchronized void RegSocketChannel(final CSocket socket) throws ClosedChannelException, IOException {
-        sockets.add(socket);
-    }
-
-    public synchronized void UnRegSocketChannel(CSocket socket) {
-        sockets.remove(socket);
-        Handle.RemoveInstance(socket);
-    }
-}
-
-class Worker implements Runnable {
-
-    private final static int T_COUNT = Runtime.getRuntime().availableProcessors();//CPU核数
-    private ExecutorService pool = Executors.newFixedThreadPool(T_COUNT, new ThreadRenameFactory("Async DataReceiver Thread"));
-    private static ILog logger = LogFactory.getLogger(Worker.class);
-    List<CSocket> sockets = null;
-
-    public Worker(List<CSocket> sockets) {
-        this.sockets = sockets;
+    public void RegSocketChannel(final CSocket socket) throws ClosedChannelException, IOException {
+        int idx = (rr.getAndIncrement() & Integer.MAX_VALUE) % reactors.length;
+        socket.setReactor(reactors[idx]);
+        reactors[idx].register(socket);
     }
 
-    @Override
-    public void run() {
-        while (true) {
-            try {
-                for (final CSocket socket : sockets) {
-                    try {
-                        pool.execute(Handle.getInstance(socket));
-                    } catch (Throwable ex) {
-                        logger.error(ex);
-                    }
-                }
-                Thread.sleep(1);
-            } catch (Throwable ex) {
-                logger.error(ex);
-            }
-        }
-    }
-}
-
-class Handle implements Runnable {
-
-    private static ConcurrentHashMap<CSocket, Handle> mapInstance = new ConcurrentHashMap<CSocket, Handle>();
-    private static ILog logger = LogFactory.getLogger(Handle.class);
-    private final static Object lockHelper = new Object();
-    private CSocket socket = null;
-
-    protected static Handle getInstance(CSocket socket) {
-        Handle handle = mapInstance.get(socket);
-        if (handle == null) {
-            synchronized (lockHelper) {
-                if (handle == null) {
-                    handle = new Handle(socket);
-                    mapInstance.put(socket, handle);
-                }
-            }
-        }
-        return handle;
-
-    }
-
-    private Handle(CSocket socket) {
-        this.socket = socket;
-    }
-
-    protected static void RemoveInstance(CSocket socket) {
-        synchronized (lockHelper) {
-            mapInstance.remove(socket);
-        }
-    }
-
-    @Override
-    public void run() {
-        try {
-            socket.frameHandle();
-        } catch (Throwable ex) {
-            logger.error("socket frameHandle error "+ex,ex);
-            if (!socket.connecting()) {
-                socket.dispose(true);
-            }
+    public void UnRegSocketChannel(CSocket socket) {
+        SelectionKey key = socket.getSelectionKey();
+        if (key != null) {
+            key.cancel();
+            key.selector().wakeup();
         }
     }
 }
@@ -0,0 +1,225 @@
+/*
+ *  Copyright Beijing 58 Information Technology Co.,Ltd.
+ *
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package com.bj58.spat.gaea.client.communication.socket;
+
+import java.nio.ByteBuffer;
+
+import com.bj58.spat.gaea.client.GaeaConst;
+import com.bj58.spat.gaea.client.utility.logger.ILog;
+import com.bj58.spat.gaea.client.utility.logger.LogFactory;
+import com.bj58.spat.gaea.protocol.sfp.v1.Protocol;
+import com.bj58.spat.gaea.protocol.sfp.v1.SFPStruct;
+import com.bj58.spat.gaea.protocol.utility.ByteConverter;
+import com.bj58.spat.gaea.protocol.utility.ProtocolConst;
+
+/**
+ * FrameDecoder
+ * 
+ * 从接收缓冲区中切分数据包:根据协议头中的TotalLen直接定位包尾,整包只拷贝一次;
+ * 大于接收缓冲区的数据包直接拷贝到按TotalLen分配的数组中,跨多次read的半包留到下一次继续拼接。
+ * 协议头或包尾标记校验失败时,退回到扫描P_END_TAG重新找到下一个包的起始位置。
+ * 超过接收上限的数据包不分配内存,通知调用方按sessionId结束对应的请求后重新同步。
+ *
+ * @author Service Platform Architecture Team (spat@58.com)
+ */
+class FrameDecoder {
+
+    private static final ILog logger = LogFactory.getLogger(FrameDecoder.class);
+    private static final byte[] END_TAG = ProtocolConst.P_END_TAG;
+    /**
+     * Version + TotalLen
+     */
+    private static final int HEAD_LEN = SFPStruct.Version + SFPStruct.TotalLen;
+    /**
+     * 协议头14个byte
+     */
+    private static final int MIN_FRAME_LEN = 14;
+    /**
+     * 协议头中TotalLen的上限,超过的不分配内存
+     */
+    private final int maxFrameLen;
+    private final OverflowHandler overflowHandler;
+
+    /**
+     * 正在拼接的大数据包
+     */
+    private byte[] frame = null;
+    private int filled = 0;
+    /**
+     * 已匹配的包尾字节数(用于大数据包的包尾校验和重新同步)
+     */
+    private int tagMatched = 0;
+    private boolean resync = false;
+
+    /**
+     * 数据包超过接收上限时的通知
+     */
+    interface OverflowHandler {
+        void frameOverflow(int sessionId, int totalLen);
+    }
+
+    public FrameDecoder() {
+        this(GaeaConst.DEFAULT_MAX_RECEIVE_SIZE, null);
+    }
+
+    /**
+     * @param maxReceiveSize 接收数据包(含包尾标记)的最大长度,即配置中的maxReceiveSize
+     * @param overflowHandler 可以为null
+     */
+    public FrameDecoder(int maxReceiveSize, OverflowHandler overflowHandler) {
+        this.maxFrameLen = Math.max(MIN_FRAME_LEN, maxReceiveSize - END_TAG.length);
+        this.overflowHandler = overflowHandler;
+    }
+
+    /**
+     * 从in(读模式)中取出下一个完整的数据包(不含包尾标记)
+     * @param in 接收缓冲区,调用方处理完成后需要compact
+     * @return 完整的数据包,数据不足时返回null
+     */
+    public byte[] decode(ByteBuffer in) {
+        while (true) {
+            if (resync) {
+                if (!skipToEndTag(in)) {
+                    return null;
+                }
+                resync = false;
+                continue;
+            }
+            if (frame != null) {
+                if (!fillFrame(in)) {
+                    if (resync) {
+                        continue;
+                    }
+                    return null;
+                }
+                byte[] pak = frame;
+                frame = null;
+                return pak;
+            }
+            if (in.remaining() < HEAD_LEN) {
+                return null;
+            }
+
+            byte[] buf = in.array();
+            int start = in.arrayOffset() + in.position();
+            int totalLen = ByteConverter.bytesToIntLittleEndian(buf, start + SFPStruct.Version);
+            if (buf[start] != Protocol.VERSION || totalLen < MIN_FRAME_LEN) {
+                logger.warn("invalid frame header(version:" + buf[start] + ",totalLen:" + totalLen + "),skip to next end tag");
+                beginResync();
+                continue;
+            }
+            if (totalLen > maxFrameLen) {
+                if (in.remaining() < HEAD_LEN + SFPStruct.SessionId) {
+                    return null;
+                }
+                int sessionId = ByteConverter.bytesToIntLittleEndian(buf, start + HEAD_LEN);
+                logger.warn("frame too large(sessionId:" + sessionId + ",totalLen:" + totalLen + ",max:" + maxFrameLen + "),skip to next end tag");
+                if (overflowHandler != null) {
+                    overflowHandler.frameOverflow(sessionId, totalLen);
+                }
+                beginResync();
+                continue;
+            }
+
+            int frameLen = totalLen + END_TAG.length;
+            if (in.remaining() >= frameLen) {
+                if (!isEndTag(buf, start + totalLen)) {
+                    logger.warn("frame end tag not match(totalLen:" + totalLen + "),skip to next end tag");
+                    beginResync();
+                    continue;
+                }
+                byte[] pak = new byte[totalLen];
+                System.arraycopy(buf, start, pak, 0, totalLen);
+                in.position(in.position() + frameLen);
+                return pak;
+            }
+
+            if (frameLen > in.capacity()) {
+                frame = new byte[totalLen];
+                filled = 0;
+                tagMatched = 0;
+                continue;
+            }
+            return null;
+        }
+    }
+
+    /**
+     * 丢弃未完成的数据包
+     */
+    public void reset() {
+        frame = null;
+        filled = 0;
+        tagMatched = 0;
+        resync = false;
+    }
+
+    private boolean fillFrame(ByteBuffer in) {
+        if (filled < frame.length) {
+            int len = Math.min(in.remaining(), frame.length - filled);
+            in.get(frame, filled, len);
+            filled += len;
+        }
+        while (filled == frame.length && tagMatched < END_TAG.length && in.hasRemaining()) {
+            if (in.get() != END_TAG[tagMatched]) {
+                logger.warn("frame end tag not match(totalLen:" + frame.length + "),skip to next end tag");
+                frame = null;
+                beginResync();
+                return false;
+            }
+            tagMatched++;
+        }
+        if (filled == frame.length && tagMatched == END_TAG.length) {
+            tagMatched = 0;
+            return true;
+        }
+        return false;
+    }
+
+    private void beginResync() {
+        resync = true;
+        tagMatched = 0;
+    }
+
+    private boolean skipToEndTag(ByteBuffer in) {
+        while (in.hasRemaining()) {
+            byte b = in.get();
+            if (b == END_TAG[tagMatched]) {
+                if (++tagMatched == END_TAG.length) {
+                    tagMatched = 0;
+                    return true;
+                }
+            } else {
+                tagMatched = (b == END_TAG[0]) ? 1 : 0;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isEndTag(byte[] buf, int offset) {
+        for (int i = 0; i < END_TAG.length; i++) {
+            if (buf[offset + i] != END_TAG[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
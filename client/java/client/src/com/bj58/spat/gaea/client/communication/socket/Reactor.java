@@ -0,0 +1,131 @@
+/*
+ *  Copyright Beijing 58 Information Technology Co.,Ltd.
+ *
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package com.bj58.spat.gaea.client.communication.socket;
+
+import com.bj58.spat.gaea.client.utility.logger.ILog;
+import com.bj58.spat.gaea.client.utility.logger.LogFactory;
+
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Reactor
+ * 
+ * 一个Selector及其线程,负责注册到该Selector上的CSocket的读事件和写满后的OP_WRITE事件
+ * 
+ * @author Service Platform Architecture Team (spat@58.com)
+ */
+class Reactor implements Runnable {
+
+    private static ILog logger = LogFactory.getLogger(Reactor.class);
+    private final Selector selector;
+    private final Queue<CSocket> pendingRegister = new ConcurrentLinkedQueue<CSocket>();
+    private final Queue<CSocket> pendingWrite = new ConcurrentLinkedQueue<CSocket>();
+
+    Reactor(Selector selector) {
+        this.selector = selector;
+    }
+
+    /**
+     * SocketChannel.register在select()阻塞期间会被挂起,所以先放入队列再唤醒selector,由Reactor线程完成注册
+     */
+    void register(CSocket socket) {
+        pendingRegister.offer(socket);
+        selector.wakeup();
+    }
+
+    /**
+     * 通道写满时关注OP_WRITE,同样由Reactor线程修改interestOps
+     */
+    void interestWrite(CSocket socket) {
+        pendingWrite.offer(socket);
+        selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            try {
+                selector.select();
+                doRegister();
+                Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    SelectionKey key = it.next();
+                    it.remove();
+                    if (key.isValid() && key.isWritable()) {
+                        handleWrite(key);
+                    }
+                    if (key.isValid() && key.isReadable()) {
+                        handle((CSocket) key.attachment());
+                    }
+                }
+            } catch (Throwable ex) {
+                logger.error(ex);
+            }
+        }
+    }
+
+    private void doRegister() {
+        CSocket socket = null;
+        while ((socket = pendingRegister.poll()) != null) {
+            try {
+                SelectionKey key = socket.getChannle().register(selector, SelectionKey.OP_READ, socket);
+                socket.setSelectionKey(key);
+            } catch (Throwable ex) {
+                logger.error("register socket channel error:" + socket, ex);
+                socket.dispose(true);
+            }
+        }
+        while ((socket = pendingWrite.poll()) != null) {
+            SelectionKey key = socket.getSelectionKey();
+            if (key != null && key.isValid()) {
+                key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+            }
+        }
+    }
+
+    private void handleWrite(SelectionKey key) {
+        CSocket socket = (CSocket) key.attachment();
+        key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+        try {
+            socket.writeHandle();
+        } catch (Throwable ex) {
+            logger.error("socket writeHandle error " + ex, ex);
+            if (!socket.connecting()) {
+                socket.dispose(true);
+            }
+        }
+    }
+
+    private void handle(CSocket socket) {
+        try {
+            socket.frameHandle();
+        } catch (Throwable ex) {
+            logger.error("socket frameHandle error " + ex, ex);
+            if (!socket.connecting()) {
+                socket.dispose(true);
+            }
+        }
+    }
+}
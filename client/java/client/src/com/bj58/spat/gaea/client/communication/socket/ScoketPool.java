@@ -23,10 +23,12 @@ package com.bj58.spat.gaea.client.communication.socket;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.util.List;
-import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import com.bj58.spat.gaea.client.configuration.ServiceConfig;
 import com.bj58.spat.gaea.client.configuration.commmunication.SocketPoolProfile;
@@ -50,17 +52,34 @@ import com.bj58.spat.gaea.protocol.sfp.v1.Protocol;
 public class ScoketPool {
 
 	private static final ILog logger = LogFactory.getLogger(ScoketPool.class);
+	/**
+	 * 预热连接的线程池,空闲线程60秒后退出;守护线程,不阻止客户端JVM退出
+	 */
+	private static final ExecutorService prewarmPool = Executors.newCachedThreadPool(new ThreadRenameFactory("Gaea Prewarm Thread", true));
     private InetSocketAddress endPoint;
     private SocketPoolProfile socketPoolConfig;
-    private CQueueL queue = null;
+    private CStack queue = null;
     private Server server;
     private ServiceConfig serviceConfig;
+    /**
+     * 多路复用模式下的共享连接,非多路复用时为null
+     */
+    private AtomicReferenceArray<CSocket> sharedSockets = null;
+    /**
+     * 共享连接槽位的建连标记,只有CAS抢到该槽位的线程建立连接
+     */
+    private AtomicIntegerArray sharedConnecting = null;
+    private final AtomicInteger sharedIndex = new AtomicInteger(0);
     
     public ScoketPool(Server server, SocketPoolProfile config) {
         this.server = server;
         this.endPoint = new InetSocketAddress(server.getAddress(), server.getPort());
         this.socketPoolConfig = config;
-        this.queue = new CQueueL(config.getShrinkInterval(), config.getMinPoolSize());
+        this.queue = new CStack(config.getShrinkInterval(), config.getMinPoolSize());
+        if (config.isMultiplex()) {
+            this.sharedSockets = new AtomicReferenceArray<CSocket>(config.getMultiplex());
+            this.sharedConnecting = new AtomicIntegerArray(config.getMultiplex());
+        }
     }
     
     /**
@@ -75,32 +94,34 @@ public class ScoketPool {
         this.server = server;
         this.endPoint = new InetSocketAddress(server.getAddress(), server.getPort());
         this.socketPoolConfig = serviceconfig.getSocketPool();
-        this.queue = new CQueueL(serviceconfig.getSocketPool().getShrinkInterval(), serviceconfig.getSocketPool().getMinPoolSize());
+        this.queue = new CStack(serviceconfig.getSocketPool().getShrinkInterval(), serviceconfig.getSocketPool().getMinPoolSize());
         this.serviceConfig = serviceconfig;
+        if (socketPoolConfig.isMultiplex()) {
+            this.sharedSockets = new AtomicReferenceArray<CSocket>(socketPoolConfig.getMultiplex());
+            this.sharedConnecting = new AtomicIntegerArray(socketPoolConfig.getMultiplex());
+        }
     }
     
     public int count() {
         return queue.size();
     }
 
-    public synchronized CSocket getSocket() throws TimeoutException, IOException, InterruptedException, Throwable, Exception {
-        CSocket rSocket = null;
-        if (queue.size() > 0) {
-            rSocket = queue.dequeue();
-        } else if (queue.getTotal() < socketPoolConfig.getMaxPoolSize()) {
-            CSocket socket = new CSocket(endPoint, this, socketPoolConfig);
-            //如果启动权限认证则注册之前进行授权文件认证
-            if(checkRights(socket)){
-            	queue.register(socket);//注册到连接池中
-                rSocket = socket;
-            }else{
-            	 logger.error("授权文件没有通过校验!");
-            	 throw new Exception("授权文件没有通过校验!");
-            }
-        } else {        	
-            if (queue.size() > 0) {            	
-            	rSocket = queue.dequeue();
-            } else {            	
+    public CSocket getSocket() throws TimeoutException, IOException, InterruptedException, Throwable, Exception {
+        if (sharedSockets != null) {
+            return getSharedSocket();
+        }
+        return checkoutSocket();
+    }
+
+    /**
+     * 独占借出:先取空闲连接,没有时CAS占用一个名额在锁外建立新连接,名额用完则限时等待归还
+     */
+    private CSocket checkoutSocket() throws TimeoutException, IOException, InterruptedException, Throwable, Exception {
+        CSocket rSocket = queue.dequeue();
+        if (rSocket == null) {
+            if (queue.reserve(socketPoolConfig.getMaxPoolSize())) {
+                rSocket = createSocket();
+            } else {
             	rSocket = queue.dequeue(socketPoolConfig.getWaitTimeout());
             	if (rSocket == null) {
                     logger.error("socket connection pool is full!");
@@ -108,27 +129,148 @@ public class ScoketPool {
                 }
             }
         }
-        if (rSocket == null) {
-            throw new Exception("GetSocket socket is null!");
-        }
         rSocket.setInPool(false);
         return rSocket;
     }
 
+    /**
+     * 建立连接并注册到连接池中,调用前必须已通过reserve占用名额
+     */
+    private CSocket createSocket() throws Throwable {
+        CSocket socket = null;
+        try {
+            socket = new CSocket(endPoint, this, socketPoolConfig);
+            //如果启动权限认证则注册之前进行授权文件认证
+            if (!checkRights(socket)) {
+                logger.error("授权文件没有通过校验!");
+                throw new Exception("授权文件没有通过校验!");
+            }
+            queue.register(socket);//注册到连接池中
+            return socket;
+        } catch (Throwable ex) {
+            if (socket != null) {
+                socket.dispose(true);
+            }
+            queue.unreserve();
+            throw ex;
+        }
+    }
+
+    /**
+     * 多路复用模式:按轮询从共享连接中选取,不借出,请求通过sessionId在同一连接上并发
+     */
+    private CSocket getSharedSocket() throws Throwable {
+        int idx = (sharedIndex.getAndIncrement() & Integer.MAX_VALUE) % sharedSockets.length();
+        return getSharedSocket(idx);
+    }
+
+    private CSocket getSharedSocket(int idx) throws Throwable {
+        CSocket socket = sharedSockets.get(idx);
+        if (socket != null && socket.connecting()) {
+            return socket;
+        }
+        //每个槽位只由抢到标记的线程在锁外建立连接,其它槽位不受影响
+        if (sharedConnecting.compareAndSet(idx, 0, 1)) {
+            try {
+                return connectShared(idx);
+            } finally {
+                sharedConnecting.set(idx, 0);
+                synchronized (sharedConnecting) {
+                    sharedConnecting.notifyAll();
+                }
+            }
+        }
+        //该槽位正在建立连接,优先使用其它可用的共享连接,都不可用时只等待该槽位
+        socket = findSharedSocket(idx);
+        if (socket != null) {
+            return socket;
+        }
+        long deadline = System.currentTimeMillis() + socketPoolConfig.getWaitTimeout();
+        synchronized (sharedConnecting) {
+            long remain;
+            while (sharedConnecting.get(idx) != 0 && (remain = deadline - System.currentTimeMillis()) > 0) {
+                sharedConnecting.wait(remain);
+            }
+        }
+        socket = sharedSockets.get(idx);
+        if (socket != null && socket.connecting()) {
+            return socket;
+        }
+        if (sharedConnecting.get(idx) != 0) {
+            throw new TimeoutException("wait shared connection timeout,server:" + endPoint);
+        }
+        throw new IOException("shared connection is not available,server:" + endPoint);
+    }
+
+    /**
+     * 建立槽位idx的共享连接,替换掉的连接释放并从连接池中注销
+     */
+    private CSocket connectShared(int idx) throws Throwable {
+        CSocket socket = sharedSockets.get(idx);
+        if (socket != null) {
+            if (socket.connecting()) {
+                return socket;
+            }
+            socket.dispose(true);
+            sharedSockets.compareAndSet(idx, socket, null);
+        }
+        queue.reserve(Integer.MAX_VALUE);
+        socket = createSocket();
+        socket.setShared(true);
+        sharedSockets.set(idx, socket);
+        return socket;
+    }
+
+    private CSocket findSharedSocket(int idx) {
+        int length = sharedSockets.length();
+        for (int i = 1; i < length; i++) {
+            CSocket socket = sharedSockets.get((idx + i) % length);
+            if (socket != null && socket.connecting()) {
+                return socket;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 在后台并行建立minPoolSize个连接(多路复用模式下为全部共享连接),
+     * 避免服务发布后第一批请求串行等待TCP及权限认证握手
+     */
+    public void prewarm() {
+        int count = (sharedSockets != null) ? sharedSockets.length() : socketPoolConfig.getMinPoolSize();
+        for (int i = 0; i < count; i++) {
+            final int idx = i;
+            prewarmPool.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        if (sharedSockets != null) {
+                            getSharedSocket(idx);
+                        } else if (queue.reserve(socketPoolConfig.getMinPoolSize())) {
+                            release(createSocket());
+                        }
+                    } catch (Throwable ex) {
+                        logger.warn("prewarm connection error,server:" + endPoint + "," + ex);
+                    }
+                }
+            });
+        }
+    }
+
     public void release(CSocket socket) {
         if (socket == null) {
             logger.warn("socket is null when release(CSocket socket)");
         } else if (!socket.connecting()) {
             logger.warn("socket is closed when release(CSocket socket)--" + socket.toString());
             destroy(socket);
+        } else if (socket.isShared()) {
+            return;
         } else if (socketPoolConfig.AutoShrink() && queue.shrink()) {
             socket.waitDestroy();
             logger.info("this socket is waitDestroy!");
         } else if (!socket.inPool()) {
-            if (socket != null) {
-                queue.enqueue(socket);
-                socket.setInPool(true);
-            }
+            socket.setInPool(true);
+            queue.enqueue(socket);
         }
     }
 
@@ -140,6 +282,11 @@ public class ScoketPool {
             logger.error("socket destroy error!--" + socket.toString(), err);
         } finally {
             queue.remove(socket);
+            if (socket.isShared()) {
+                for (int i = 0; i < sharedSockets.length(); i++) {
+                    sharedSockets.compareAndSet(i, socket, null);
+                }
+            }
         }
     }
 
@@ -197,7 +344,12 @@ public class ScoketPool {
 		/**
 		 * 过程3,接收服务器端生成公钥
 		 */
-		byte[] receivePublicBuffer = scoket.receive(publicKeyProtocol.getSessionID(), server.getCurrUserCount());
+		byte[] receivePublicBuffer = null;
+		try {
+			receivePublicBuffer = scoket.receive(publicKeyProtocol.getSessionID(), server.getCurrUserCount());
+		} finally {
+			scoket.unregisterRec(publicKeyProtocol.getSessionID());
+		}
 		if (null == receivePublicBuffer) {
 			logger.warn("获取服务器公钥失败!");
 			return false;
@@ -248,7 +400,12 @@ public class ScoketPool {
 		/**
 		 * 过程5 获取由客户端公钥加密后的DES密钥
 		 */
-		byte[] receiveDESKey = scoket.receive(protocol_mw.getSessionID(), server.getCurrUserCount());
+		byte[] receiveDESKey = null;
+		try {
+			receiveDESKey = scoket.receive(protocol_mw.getSessionID(), server.getCurrUserCount());
+		} finally {
+			scoket.unregisterRec(protocol_mw.getSessionID());
+		}
 		if (null == receiveDESKey) {
 			logger.warn("获取DES密钥失败!");
 			return false;
@@ -286,77 +443,3 @@ public class ScoketPool {
 		return (scoket.getDESKey() != null && scoket.getDESKey().length > 0) ? true : false;
 	}
 }
-
-
-class CQueueL extends LinkedBlockingQueue<CSocket> {
-
-    private int _duration;
-    private int _minConn;
-    private final Object shrinkLockHelper = new Object();
-    private CopyOnWriteArrayList<CSocket> _AllSocket = new CopyOnWriteArrayList<CSocket>();
-    
-    public CQueueL(int _duration, int _minConn) {
-        this._duration = _duration;
-        this._minConn = _minConn;
-    }
-
-    public CSocket enqueue(CSocket element) {
-        offer(element);
-        return element;
-    }
-
-    public CSocket dequeue() {
-        CSocket csocket = (CSocket) poll();
-        return csocket;
-    }
-    
-    public CSocket dequeue(long time) throws InterruptedException {
-        CSocket csocket = (CSocket) poll(time,TimeUnit.MILLISECONDS);
-        return csocket;
-    }
-
-    public void register(CSocket socket) {
-        _AllSocket.add(socket);
-    }
-
-    public synchronized boolean remove(CSocket socket) {
-        _AllSocket.remove(socket);
-        return super.remove(socket);
-    }
-
-    public int getTotal() {
-        return _AllSocket.size();
-    }
-
-    public List<CSocket> getAllSocket() {
-        return _AllSocket;
-    }
-    private long lastCheckTime = System.currentTimeMillis();
-    private int freeCount = -1;
-    private int shrinkCount = 0;
-
-    public boolean shrink() {
-        synchronized (shrinkLockHelper) {
-            if (shrinkCount > 0) {
-                shrinkCount--;
-                return true;
-            }
-            if ((System.currentTimeMillis() - lastCheckTime) > _duration) {
-                lastCheckTime = System.currentTimeMillis();
-                boolean b = (freeCount > 0) && (getTotal() > _minConn);
-                if (b) {
-                    shrinkCount = Math.min((getTotal() - _minConn), freeCount);
-                    if (shrinkCount < 0) {
-                        shrinkCount = 0;
-                    }
-                }
-                return false;
-            }
-            int currFreeCount = this.size();
-            if (currFreeCount < freeCount || freeCount < 0) {
-                freeCount = currFreeCount;
-            }
-            return false;
-        }
-    }
-}
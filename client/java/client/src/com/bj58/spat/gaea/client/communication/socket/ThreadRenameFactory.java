@@ -33,18 +33,27 @@ public class ThreadRenameFactory implements ThreadFactory {
 	final AtomicInteger threadNumber = new AtomicInteger(1);
 	final ThreadGroup group;
 	final String namePrefix;
+	final boolean daemon;
 
 	public ThreadRenameFactory(String threadNamePrefix) {
+		this(threadNamePrefix, false);
+	}
+
+	/**
+	 * @param daemon 是否为守护线程,守护线程不会阻止JVM退出
+	 */
+	public ThreadRenameFactory(String threadNamePrefix, boolean daemon) {
 		SecurityManager s = System.getSecurityManager();
 		group = (s != null) ? s.getThreadGroup() : Thread.currentThread().getThreadGroup();
 		namePrefix = threadNamePrefix + "-pool-" + poolNumber.getAndIncrement()+ "-tid-";
+		this.daemon = daemon;
 	}
 
 	@Override
 	public Thread newThread(Runnable r) {
 		Thread t = new Thread(group, r, namePrefix + threadNumber.getAndIncrement(), 0);
-		if (t.isDaemon()) {
-			t.setDaemon(false);
+		if (t.isDaemon() != daemon) {
+			t.setDaemon(daemon);
 		}
 		if (t.getPriority() != Thread.NORM_PRIORITY) {
 			t.setPriority(Thread.NORM_PRIORITY);
@@ -20,48 +20,157 @@
  */
 package com.bj58.spat.gaea.client.communication.socket;
 
-import com.bj58.spat.gaea.client.utility.AutoResetEvent;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import com.bj58.spat.gaea.client.utility.IAsyncHandler;
 /**
  * WindowData
+ * 关联表中可复用的槽位,同一时刻只属于一个sessionId
+ * armed为当前等待中的sessionId,谁CAS成功(收到数据、超时、断开、注销)谁负责完成该请求
  *
  * @author Service Platform Architecture Team (spat@58.com)
  */
 public class WindowData {
 
-	AutoResetEvent _event;
-	byte[] _data;
-	private byte flag;
-	private Exception exception;
+	private final int index;
+	private final AtomicInteger armed = new AtomicInteger(0);
+	private volatile int sessionId;
+	private volatile boolean done;
+	private volatile byte[] _data;
+	private volatile Exception exception;
+	private volatile Thread waiter;
+	private volatile IAsyncHandler<byte[]> handler;
+	private volatile Future<?> timeoutFuture;
 
-	public WindowData(AutoResetEvent event) {
-		_event = event;
+	WindowData(int index) {
+		this.index = index;
 	}
 
-	public AutoResetEvent getEvent() {
-		return _event;
+	/**
+	 * 槽位分配给sessionId,handler为null时为同步接收,由当前线程等待
+	 */
+	void arm(int sessionId, IAsyncHandler<byte[]> handler) {
+		this.sessionId = sessionId;
+		this._data = null;
+		this.exception = null;
+		this.timeoutFuture = null;
+		this.handler = handler;
+		this.waiter = (handler == null) ? Thread.currentThread() : null;
+		this.done = false;
+		armed.set(sessionId);
 	}
 
-	public byte[] getData() {
-		return _data;
+	/**
+	 * 抢占该sessionId的完成权,只有一方能成功
+	 */
+	boolean disarm(int sessionId) {
+		return armed.compareAndSet(sessionId, 0);
 	}
 
-	public void setData(byte[] data) {
+	int armedSessionId() {
+		return armed.get();
+	}
+
+	/**
+	 * disarm成功后设置结果并唤醒同步等待线程
+	 */
+	void complete(byte[] data, Exception ex) {
 		_data = data;
+		exception = ex;
+		done = true;
+		Thread t = waiter;
+		if (t != null) {
+			LockSupport.unpark(t);
+		}
+	}
+
+	/**
+	 * 同步等待结果
+	 * @return false 超时
+	 */
+	boolean await(long timeout) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+		boolean interrupted = false;
+		try {
+			while (!done) {
+				long remain = deadline - System.nanoTime();
+				if (remain <= 0) {
+					if (disarm(sessionId)) {
+						complete(null, null);
+						return false;
+					}
+					//数据已被接收线程抢占,等待其写入
+					Thread.yield();
+					continue;
+				}
+				LockSupport.parkNanos(this, remain);
+				if (Thread.interrupted()) {
+					if (disarm(sessionId)) {
+						complete(null, null);
+						throw new InterruptedException();
+					}
+					//结果已被其他线程抢占,先取回结果,返回前恢复中断状态
+					interrupted = true;
+				}
+			}
+			return true;
+		} finally {
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	void awaitDone() {
+		while (!done) {
+			Thread.yield();
+		}
+	}
+
+	void clear() {
+		sessionId = 0;
+		_data = null;
+		exception = null;
+		handler = null;
+		waiter = null;
+		timeoutFuture = null;
 	}
 
-	public byte getFlag() {
-		return flag;
+	int getIndex() {
+		return index;
 	}
 
-	public void setFlag(byte flag) {
-		this.flag = flag;
+	public int getSessionId() {
+		return sessionId;
+	}
+
+	public byte[] getData() {
+		return _data;
 	}
 
 	public Exception getException() {
 		return exception;
 	}
 
-	public void setException(Exception exception) {
-		this.exception = exception;
+	public IAsyncHandler<byte[]> getHandler() {
+		return handler;
+	}
+
+	Thread getWaiter() {
+		return waiter;
+	}
+
+	public void setTimeoutFuture(Future<?> timeoutFuture) {
+		this.timeoutFuture = timeoutFuture;
+	}
+
+	public void cancelTimeout() {
+		Future<?> f = timeoutFuture;
+		if (f != null) {
+			f.cancel(false);
+		}
 	}
 }
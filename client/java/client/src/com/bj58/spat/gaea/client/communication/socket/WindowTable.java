@@ -0,0 +1,128 @@
+/*
+ *  Copyright Beijing 58 Information Technology Co.,Ltd.
+ *
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package com.bj58.spat.gaea.client.communication.socket;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import com.bj58.spat.gaea.client.utility.IAsyncHandler;
+
+/**
+ * WindowTable
+ * 单个连接上sessionId与等待槽位的关联表,容量固定、开放寻址、槽位复用
+ * sessionId为顺序递增,直接按低位定位,冲突时线性探测
+ *
+ * @author Service Platform Architecture Team (spat@58.com)
+ */
+class WindowTable {
+
+	private final int mask;
+	private final AtomicIntegerArray keys;
+	private final AtomicReferenceArray<WindowData> slots;
+	private final AtomicInteger size = new AtomicInteger(0);
+	/**
+	 * 曾经出现过的最大探测距离,查找时只需探测到这里
+	 */
+	private final AtomicInteger maxProbe = new AtomicInteger(0);
+
+	WindowTable(int capacity) {
+		int cap = 1;
+		while (cap < capacity) {
+			cap <<= 1;
+		}
+		this.mask = cap - 1;
+		this.keys = new AtomicIntegerArray(cap);
+		this.slots = new AtomicReferenceArray<WindowData>(cap);
+	}
+
+	/**
+	 * 为sessionId占用一个槽位
+	 * @param sessionId 必须大于0
+	 * @param handler 异步回调,同步接收时为null
+	 * @throws Exception 在途请求数超过容量
+	 */
+	WindowData register(int sessionId, IAsyncHandler<byte[]> handler) throws Exception {
+		if (sessionId <= 0) {
+			throw new IllegalArgumentException("sessionId must be positive:" + sessionId);
+		}
+		int capacity = mask + 1;
+		for (int probe = 0; probe < capacity; probe++) {
+			int idx = (sessionId + probe) & mask;
+			if (keys.get(idx) == 0 && keys.compareAndSet(idx, 0, sessionId)) {
+				WindowData wd = slots.get(idx);
+				if (wd == null) {
+					wd = new WindowData(idx);
+					slots.set(idx, wd);
+				}
+				updateMaxProbe(probe);
+				size.incrementAndGet();
+				wd.arm(sessionId, handler);
+				return wd;
+			}
+		}
+		throw new Exception("too many requests waiting on this connection,window size:" + capacity);
+	}
+
+	WindowData get(int sessionId) {
+		int limit = maxProbe.get();
+		for (int probe = 0; probe <= limit; probe++) {
+			int idx = (sessionId + probe) & mask;
+			if (keys.get(idx) == sessionId) {
+				return slots.get(idx);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * 释放槽位,调用方必须已确认该请求完成
+	 */
+	void free(WindowData wd) {
+		wd.clear();
+		keys.set(wd.getIndex(), 0);
+		size.decrementAndGet();
+	}
+
+	int size() {
+		return size.get();
+	}
+
+	int capacity() {
+		return mask + 1;
+	}
+
+	/**
+	 * @return 已被占用过的槽位,可能为null
+	 */
+	WindowData slotAt(int idx) {
+		return slots.get(idx);
+	}
+
+	private void updateMaxProbe(int probe) {
+		int current;
+		while (probe > (current = maxProbe.get())) {
+			if (maxProbe.compareAndSet(current, probe)) {
+				return;
+			}
+		}
+	}
+}
@@ -45,6 +45,8 @@ public final class ServiceConfig {
     private ProtocolProfile protocol;
     private List<ServerProfile> servers;
     private KeyProfile SecureKey;//授权配置文件
+    private String loadBalance;//负载均衡策略
+    private boolean outlierEjection = true;//是否摘除异常服务器
     
     public KeyProfile getSecureKey() {
 		return SecureKey;
@@ -69,6 +71,14 @@ public final class ServiceConfig {
         return servers;
     }
 
+    public String getLoadBalance() {
+        return loadBalance;
+    }
+
+    public boolean isOutlierEjection() {
+        return outlierEjection;
+    }
+
     public int getServiceid() {
         return serviceid;
     }
@@ -121,6 +131,15 @@ public final class ServiceConfig {
         	printExceprion(3,serviceName);
         }
         
+        Node balanceNode = xnServers.item(0).getParentNode().getAttributes().getNamedItem("balance");
+        if (balanceNode != null) {
+            config.loadBalance = balanceNode.getNodeValue();
+        }
+        Node ejectionNode = xnServers.item(0).getParentNode().getAttributes().getNamedItem("outlierEjection");
+        if (ejectionNode != null) {
+            config.outlierEjection = Boolean.parseBoolean(ejectionNode.getNodeValue());
+        }
+
         List<ServerProfile> servers = new ArrayList<ServerProfile>();
         for (int i = 0; i < xnServers.getLength(); i++) {
             servers.add(new ServerProfile(xnServers.item(i)));
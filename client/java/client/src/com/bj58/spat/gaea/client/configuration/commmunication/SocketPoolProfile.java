@@ -41,6 +41,9 @@ public class SocketPoolProfile {
     private int bufferSize;
     private int connectionTimeout = 3000;
     private int maxPakageSize;
+    private int maxReceiveSize;
+    private int windowSize;
+    private int multiplex;
     private boolean _protected;
 	private int reconnectTime = 0;
 	
@@ -71,6 +74,28 @@ public class SocketPoolProfile {
         } else {
             this.maxPakageSize = Integer.parseInt(nPackage.getNodeValue());
         }
+        Node nReceive = node.getAttributes().getNamedItem("maxReceiveSize");
+        if (nReceive == null) {
+            this.maxReceiveSize = Math.max(maxPakageSize, GaeaConst.DEFAULT_MAX_RECEIVE_SIZE);
+        } else {
+            this.maxReceiveSize = Integer.parseInt(nReceive.getNodeValue());
+        }
+        Node nConnectionTimeout = node.getAttributes().getNamedItem("connectionTimeout");
+        if (nConnectionTimeout != null) {
+            this.connectionTimeout = TimeSpanHelper.getIntFromTimeMsSpan(nConnectionTimeout.getNodeValue());
+        }
+        Node nWindowSize = node.getAttributes().getNamedItem("windowSize");
+        if (nWindowSize == null) {
+            this.windowSize = GaeaConst.DEFAULT_WINDOW_SIZE;
+        } else {
+            this.windowSize = Integer.parseInt(nWindowSize.getNodeValue());
+        }
+        Node nMultiplex = node.getAttributes().getNamedItem("multiplex");
+        if (nMultiplex == null) {
+            this.multiplex = GaeaConst.DEFAULT_MULTIPLEX;
+        } else {
+            this.multiplex = Math.max(0, Integer.parseInt(nMultiplex.getNodeValue()));
+        }
         
         Node nReconnectTime = node.getAttributes().getNamedItem("reconnectTime");
         if (nReconnectTime != null) {
@@ -128,6 +153,28 @@ public class SocketPoolProfile {
         return maxPakageSize;
     }
 
+    /**
+     * 接收数据包(含包尾标记)的最大长度,maxPakageSize只限制发送
+     */
+    public int getMaxReceiveSize() {
+        return maxReceiveSize;
+    }
+
+    public int getWindowSize() {
+        return windowSize;
+    }
+
+    /**
+     * 多路复用模式下共享的连接数,0表示使用独占借出的连接池
+     */
+    public int getMultiplex() {
+        return multiplex;
+    }
+
+    public boolean isMultiplex() {
+        return multiplex > 0;
+    }
+
     public boolean isProtected() {
         return _protected;
     }
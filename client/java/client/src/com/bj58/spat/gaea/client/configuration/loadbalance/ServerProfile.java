@@ -36,6 +36,7 @@ public class ServerProfile {
     private int port;
     private int deadTimeout;
     private float weithtRate;
+    private int slowStart;
 
     public ServerProfile(Node node) {
         NamedNodeMap attributes = node.getAttributes();
@@ -59,6 +60,12 @@ public class ServerProfile {
         } else {
             this.deadTimeout = GaeaConst.DEFAULT_DEAD_TIMEOUT;
         }
+        atribute = node.getParentNode().getAttributes().getNamedItem("slowStart");
+        if (atribute != null) {
+            this.slowStart = TimeSpanHelper.getIntFromTimeMsSpan(atribute.getNodeValue().toString());
+        } else {
+            this.slowStart = GaeaConst.DEFAULT_SLOW_START;
+        }
     }
 
     /*
@@ -68,6 +75,13 @@ public class ServerProfile {
         return deadTimeout;
     }
 
+    /*
+     * 恢复后的慢启动时间,Unit is ms,0为不启用
+     */
+    public int getSlowStart() {
+        return slowStart;
+    }
+
     public String getHost() {
         return host;
     }
@@ -23,6 +23,8 @@ package com.bj58.spat.gaea.client.loadbalance;
 import com.bj58.spat.gaea.client.communication.socket.ScoketPool;
 import com.bj58.spat.gaea.client.configuration.ServiceConfig;
 import com.bj58.spat.gaea.client.configuration.loadbalance.ServerProfile;
+import com.bj58.spat.gaea.client.loadbalance.balancer.ILoadBalancer;
+import com.bj58.spat.gaea.client.loadbalance.balancer.LoadBalancerFactory;
 import com.bj58.spat.gaea.client.loadbalance.component.ServerState;
 import com.bj58.spat.gaea.client.utility.logger.ILog;
 import com.bj58.spat.gaea.client.utility.logger.LogFactory;
@@ -30,7 +32,6 @@ import com.bj58.spat.gaea.client.utility.logger.LogFactory;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
-import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Dispatcher
@@ -41,7 +42,9 @@ public class Dispatcher {
 
     private static ILog logger = LogFactory.getLogger(Server.class);
     private List<Server> ServerPool = new ArrayList<Server>();
-    private AtomicInteger requestCount = new AtomicInteger(0);
+    private static final Random random = new Random();
+    private final ILoadBalancer balancer;
+    private OutlierDetector detector = null;
     
 
     /**
@@ -49,6 +52,7 @@ public class Dispatcher {
      * @param Configuration.Configuration object
      */
     public Dispatcher(ServiceConfig config) {
+        balancer = LoadBalancerFactory.create(config.getLoadBalance());
         logger.info("starting init servers");
         logger.debug("init connection begin:" + System.currentTimeMillis());
         for (ServerProfile ser : config.getServers()) {
@@ -57,45 +61,46 @@ public class Dispatcher {
                 if (s.getState() != ServerState.Disable) {
                     ScoketPool sp = new ScoketPool(s, config);
                     s.setScoketpool(sp);
+                    sp.prewarm();
                     ServerPool.add(s);
                 }
             }
         }
+        if (config.isOutlierEjection()) {
+            detector = new OutlierDetector(ServerPool);
+        }
         logger.debug("init connection end:" + System.currentTimeMillis());
         logger.info("init servers end");
     }
 
     /**
      * get Server from Server pool
-     * @return return a Server minimum of current user
+     * 先找出到了探测时间的死亡/重启服务器并恢复摘除到期的服务器,否则交给负载均衡策略选择
+     * @return return a Server
      */
     public Server GetServer() {
         if (ServerPool == null || ServerPool.size() == 0) {
             return null;
         }
 
-        Server result = null;
-        int currUserCount = -1;
-        int count = ServerPool.size();
-        int start = requestCount.get() % count;
-        if (requestCount.get() > 10) {
-            requestCount.set(0);
-        } else {
-            requestCount.getAndIncrement();
+        if (detector != null) {
+            detector.check();
         }
+        int count = ServerPool.size();
+        for (int i = 0; i < count; i++) {
+            Server server = ServerPool.get(i);
 
-        for (int i = start; i < start + count; i++) {
-            int index = i % count;
-            Server server = ServerPool.get(index);
+            if (server.getState() == ServerState.Ejected && System.currentTimeMillis() > server.getEjectedUntil()) {
+                server.readmit();
+            }
   
             if (server.getState() == ServerState.Dead && (System.currentTimeMillis() - server.getDeadTime()) > server.getDeadTimeout()) {
                 synchronized (this) {
                     if (server.getState() == ServerState.Dead && (System.currentTimeMillis() - server.getDeadTime()) > server.getDeadTimeout()) {
-                        result = server;
                         server.setState(ServerState.Testing);
                         server.setDeadTime(0);
                         logger.warning("find server that need to test!host:" + server.getAddress());
-                        break;
+                        return server;
                     }
                 }
             }
@@ -103,25 +108,19 @@ public class Dispatcher {
             if(server.getState() == ServerState.Reboot && (System.currentTimeMillis() - server.getDeadTime()) > server.getDeadTimeout()){
        		 	synchronized (this) {
                     if (server.getState() == ServerState.Reboot && (System.currentTimeMillis() - server.getDeadTime()) > server.getDeadTimeout()) {
-                    	result = server;
 	                   	server.setState(ServerState.Testing);
                         server.setDeadTime(0);
-                        requestCount.getAndDecrement();
                         logger.warning("find server that need to test!host:" + server.getAddress());
-                        break;
+                        return server;
                     }
                 }
             }
-          
-            if ((server.getCurrUserCount() < currUserCount * server.getWeightRage() || currUserCount < 0)
-                    && server.getState() == ServerState.Normal) {
-                currUserCount = server.getCurrUserCount();
-                result = server;
-            }
         }
 
+        //慢启动由负载均衡策略通过Server.getEffectiveWeight()处理
+        Server result = balancer.select(ServerPool);
         if (result == null) {
-        	result = ServerPool.get(new Random().nextInt(count));
+        	result = ServerPool.get(random.nextInt(count));
         }
         return result;
     }
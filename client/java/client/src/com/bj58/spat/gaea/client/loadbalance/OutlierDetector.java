@@ -0,0 +1,128 @@
+/*
+ *  Copyright Beijing 58 Information Technology Co.,Ltd.
+ *
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package com.bj58.spat.gaea.client.loadbalance;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.bj58.spat.gaea.client.GaeaConst;
+import com.bj58.spat.gaea.client.loadbalance.component.ServerState;
+import com.bj58.spat.gaea.client.loadbalance.component.ServerStats;
+
+/**
+ * OutlierDetector
+ * 每个统计周期比较各服务器在该周期内的成功率和延迟中位数,摘除明显异常的服务器;
+ * 只统计周期内请求数不少于EJECTION_MIN_REQUESTS的服务器,个别慢请求不会影响中位数,避免反复摘除和恢复。
+ * 由GetServer顺带触发,同一周期只有一个线程执行统计
+ *
+ * @author Service Platform Architecture Team (spat@58.com)
+ */
+class OutlierDetector {
+
+    private final List<Server> servers;
+    private final AtomicLong nextCheck;
+    /**
+     * 上个周期结束时的统计
+     */
+    private final Map<Server, Snapshot> snapshots = new IdentityHashMap<Server, Snapshot>();
+
+    private static class Snapshot {
+        long total;
+        long failures;
+        long[] histogram = new long[ServerStats.getBuckets().length + 1];
+    }
+
+    OutlierDetector(List<Server> servers) {
+        this.servers = servers;
+        this.nextCheck = new AtomicLong(System.currentTimeMillis() + GaeaConst.EJECTION_INTERVAL);
+    }
+
+    void check() {
+        long now = System.currentTimeMillis();
+        long next = nextCheck.get();
+        if (now < next || !nextCheck.compareAndSet(next, now + GaeaConst.EJECTION_INTERVAL)) {
+            return;
+        }
+        evaluate();
+    }
+
+    synchronized void evaluate() {
+        int count = servers.size();
+        long[] requests = new long[count];
+        float[] successRate = new float[count];
+        long[] latencies = new long[count];
+        long[] sorted = new long[count];
+        int sampled = 0;
+        int ejected = 0;
+        for (int i = 0; i < count; i++) {
+            Server server = servers.get(i);
+            ServerStats stats = server.getStats();
+            long total = stats.getTotal();
+            long failures = stats.getErrors() + stats.getTimeouts();
+            long[] histogram = stats.getHistogram();
+            Snapshot last = snapshots.get(server);
+            if (last == null) {
+                last = new Snapshot();
+                snapshots.put(server, last);
+            }
+            requests[i] = total - last.total;
+            successRate[i] = requests[i] > 0 ? 1 - (failures - last.failures) / (float) requests[i] : 1;
+            long[] window = new long[histogram.length];
+            for (int b = 0; b < histogram.length; b++) {
+                window[b] = histogram[b] - last.histogram[b];
+            }
+            latencies[i] = ServerStats.getPercentile(window, 0.5);
+            last.total = total;
+            last.failures = failures;
+            last.histogram = histogram;
+            if (server.getState() == ServerState.Ejected) {
+                ejected++;
+            } else if (server.getState() == ServerState.Normal && requests[i] >= GaeaConst.EJECTION_MIN_REQUESTS && latencies[i] >= 0) {
+                sorted[sampled++] = latencies[i];
+            }
+        }
+        long median = -1;
+        if (sampled >= 3) {
+            Arrays.sort(sorted, 0, sampled);
+            median = sorted[sampled / 2];
+        }
+        int maxEjected = (int) (count * GaeaConst.EJECTION_MAX_PERCENT);
+        for (int i = 0; i < count; i++) {
+            Server server = servers.get(i);
+            if (server.getState() != ServerState.Normal || requests[i] < GaeaConst.EJECTION_MIN_REQUESTS) {
+                continue;
+            }
+            long latency = latencies[i];
+            boolean failing = successRate[i] < GaeaConst.EJECTION_SUCCESS_RATE;
+            boolean slow = median > 0 && latency > GaeaConst.EJECTION_MIN_LATENCY
+                    && latency > median * GaeaConst.EJECTION_LATENCY_FACTOR;
+            if ((failing || slow) && ejected < maxEjected) {
+                server.eject();
+                ejected++;
+            } else if (!failing && !slow) {
+                server.healthy();
+            }
+        }
+    }
+}
@@ -23,17 +23,24 @@ package com.bj58.spat.gaea.client.loadbalance;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.nio.ByteBuffer;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+import com.bj58.spat.gaea.client.GaeaConst;
 import com.bj58.spat.gaea.client.communication.socket.CSocket;
 import com.bj58.spat.gaea.client.communication.socket.ScoketPool;
 import com.bj58.spat.gaea.client.communication.socket.ThreadRenameFactory;
 import com.bj58.spat.gaea.client.configuration.loadbalance.ServerProfile;
 import com.bj58.spat.gaea.client.loadbalance.component.ServerState;
+import com.bj58.spat.gaea.client.loadbalance.component.ServerStats;
+import com.bj58.spat.gaea.client.utility.IAsyncHandler;
+import com.bj58.spat.gaea.client.utility.ICancelable;
 import com.bj58.spat.gaea.client.utility.logger.ILog;
 import com.bj58.spat.gaea.client.utility.logger.LogFactory;
+import com.bj58.spat.gaea.protocol.exception.TimeoutException;
 import com.bj58.spat.gaea.protocol.sfp.v1.Protocol;
 
 /**
@@ -51,10 +58,14 @@ public class Server {
     private float weightRage;
     private ServerState state;
     private ScoketPool scoketpool;
-    private int currUserCount;
+    private final ServerStats stats = new ServerStats();
     private int deadTimeout;
     private long deadTime;
     private boolean testing = false;
+    private final int slowStart;
+    private volatile long reviveTime = 0;
+    private volatile long ejectedUntil = 0;
+    private volatile int ejectCount = 0;
     private final ScheduledExecutorService scheduler;
 
     protected Server(ServerProfile config) {
@@ -63,6 +74,7 @@ public class Server {
         this.port = config.getPort();
         this.weightRage = config.getWeithtRate();
         this.deadTimeout = config.getDeadTimeout();
+        this.slowStart = config.getSlowStart();
         if (this.weightRage >= 0) {
             this.state = ServerState.Normal;
         } else {
@@ -77,12 +89,13 @@ public class Server {
         	throw new Exception("This proxy server is unavailable.state:" + state + "+host:" + address);
         }
         
-        increaseCU();
+        stats.requestStart();
+        long start = System.nanoTime();
         CSocket socket = null;
         try {
             try {
             	socket = this.scoketpool.getSocket();
-                byte[] data = p.toBytes(socket.isRights(),socket.getDESKey());
+                ByteBuffer[] data = p.toBuffers(socket.isRights(), socket.getDESKey());
                 socket.registerRec(p.getSessionID());
                 socket.send(data);  
             } catch (Throwable ex) {
@@ -93,13 +106,15 @@ public class Server {
             		socket.dispose();
             	}
             }
-            byte[] buffer = socket.receive(p.getSessionID(), currUserCount);
+            byte[] buffer = socket.receive(p.getSessionID(), stats.getInFlight());
+            stats.recordLatency(System.nanoTime() - start);
             Protocol result = Protocol.fromBytes(buffer,socket.isRights(),socket.getDESKey());
             if (this.state == ServerState.Testing) {
                 relive();
             }
             return result;
         } catch (IOException ex) {
+            stats.recordError();
             logger.error("io exception", ex);
             if (socket == null || !socket.connecting()) {
                 if (!test()) {
@@ -107,7 +122,12 @@ public class Server {
                 }
             }
             throw ex;
+        } catch (TimeoutException ex) {
+            stats.recordTimeout(System.nanoTime() - start);
+            logger.error("request other Exception", ex);
+            throw ex;
         } catch (Throwable ex) {
+            stats.recordError();
             logger.error("request other Exception", ex);
             throw ex;
         } finally {
@@ -117,27 +137,168 @@ public class Server {
             if (socket != null) {
                 socket.unregisterRec(p.getSessionID());
             }
-            decreaseCU();
+            stats.requestEnd();
         }
     }
 
     /**
-     * Increase current user
+     * 异步请求,发送完成后立即返回,收到响应(或超时、连接断开)时由回调线程通知handler
+     * @param p 请求协议
+     * @param handler 响应回调
+     * @return 用于取消等待的句柄
+     * @throws Exception 获取连接或发送失败
+     * @throws Throwable
      */
-    private synchronized void increaseCU() {
-        currUserCount++;
+    public ICancelable requestAsync(Protocol p, IAsyncHandler<Protocol> handler) throws Exception, Throwable {
+        if (state == ServerState.Dead) {
+        	logger.warn("This proxy server is unavailable.state:" + state + "+host:" + address);
+        	throw new Exception("This proxy server is unavailable.state:" + state + "+host:" + address);
+        }
+
+        stats.requestStart();
+        CSocket socket = null;
+        AsyncReceiveHandler receiveHandler = null;
+        try {
+            socket = this.scoketpool.getSocket();
+            ByteBuffer[] data = p.toBuffers(socket.isRights(), socket.getDESKey());
+            receiveHandler = new AsyncReceiveHandler(socket, p.getSessionID(), handler, System.nanoTime());
+            socket.registerRec(p.getSessionID(), receiveHandler, stats.getInFlight());
+            socket.send(data);
+            return receiveHandler;
+        } catch (Throwable ex) {
+            logger.error("Server get socket Exception", ex);
+            if (socket != null) {
+                socket.unregisterRec(p.getSessionID());
+            }
+            if (receiveHandler == null) {
+                stats.requestEnd();
+            } else if (!receiveHandler.finish()) {
+                //已经由接收线程回调过
+                return receiveHandler;
+            }
+            stats.recordError();
+            if (ex instanceof IOException && (socket == null || !socket.connecting())) {
+                if (!test()) {
+                    markAsDead();
+                }
+            }
+            if (state == ServerState.Testing) {
+                markAsDead();
+            }
+            throw ex;
+        } finally {
+            if (socket != null) {
+                socket.dispose();
+            }
+        }
     }
 
     /**
-     * Decrease current user
+     * 异步请求的数据接收回调,负责反序列化响应以及维护服务器状态
      */
-    private synchronized void decreaseCU() {
-        currUserCount--;
-        if (currUserCount <= 0) {
-            currUserCount = 0;
+    private class AsyncReceiveHandler implements IAsyncHandler<byte[]>, ICancelable {
+
+        private final CSocket socket;
+        private final int sessionId;
+        private final IAsyncHandler<Protocol> handler;
+        private final AtomicBoolean finished = new AtomicBoolean(false);
+        private final long start;
+
+        AsyncReceiveHandler(CSocket socket, int sessionId, IAsyncHandler<Protocol> handler, long start) {
+            this.socket = socket;
+            this.sessionId = sessionId;
+            this.handler = handler;
+            this.start = start;
+        }
+
+        /**
+         * @return 第一次调用时返回true
+         */
+        boolean finish() {
+            if (finished.compareAndSet(false, true)) {
+                stats.requestEnd();
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * 放弃等待,释放窗口槽位,之后到达的响应找不到sessionId被丢弃,不回调handler
+         */
+        @Override
+        public boolean cancel() {
+            if (!finish()) {
+                return false;
+            }
+            socket.unregisterRec(sessionId);
+            return true;
+        }
+
+        @Override
+        public void messageReceived(byte[] buffer) {
+            if (!finish()) {
+                return;
+            }
+            stats.recordLatency(System.nanoTime() - start);
+            Protocol result = null;
+            try {
+                result = Protocol.fromBytes(buffer, socket.isRights(), socket.getDESKey());
+                if (state == ServerState.Testing) {
+                    relive();
+                }
+            } catch (Throwable ex) {
+                logger.error("request other Exception", ex);
+                handler.exceptionCaught(ex);
+                return;
+            }
+            handler.messageReceived(result);
+        }
+
+        @Override
+        public void exceptionCaught(Throwable e) {
+            if (!finish()) {
+                return;
+            }
+            if (e instanceof TimeoutException) {
+                stats.recordTimeout(System.nanoTime() - start);
+            } else {
+                stats.recordError();
+            }
+            try {
+                if (e instanceof IOException && !socket.connecting()) {
+                    logger.error("io exception", e);
+                    if (!test()) {
+                        markAsDead();
+                    }
+                }
+                if (state == ServerState.Testing) {
+                    markAsDead();
+                }
+            } catch (Throwable ex) {
+                logger.error("markAsDead error", ex);
+            }
+            handler.exceptionCaught(e);
         }
     }
 
+    /**
+     * 最近一次样本时的延迟EWMA(ms),还没有样本时返回0
+     */
+    public double getLatency() {
+        return stats.getLatency();
+    }
+
+    /**
+     * 随时间向prior衰减的延迟估计(ms),还没有样本时返回prior
+     */
+    public double getLatency(double prior) {
+        return stats.getLatency(prior);
+    }
+
+    public ServerStats getStats() {
+        return stats;
+    }
+
     /**
      * mark Server to dead
      * @throws IOException
@@ -203,10 +364,74 @@ public class Server {
                 return;
             }
             logger.info("this server is relive!host:" + address);
+            this.reviveTime = System.currentTimeMillis();
             this.state = ServerState.Normal;
         }
     }
 
+    /**
+     * 摘除异常服务器,不销毁连接池,摘除时间按连续摘除次数指数增长
+     * @return 摘除时长(ms)
+     */
+    protected synchronized long eject() {
+        int count = Math.min(ejectCount, 16);
+        long duration = Math.min((long) GaeaConst.EJECTION_BASE_TIME << count, GaeaConst.EJECTION_MAX_TIME);
+        ejectCount++;
+        ejectedUntil = System.currentTimeMillis() + duration;
+        state = ServerState.Ejected;
+        logger.warn("this server is ejected!host:" + address + ",duration:" + duration + "ms,stats:" + stats);
+        return duration;
+    }
+
+    /**
+     * 摘除到期后恢复,进入慢启动
+     */
+    protected synchronized void readmit() {
+        if (state != ServerState.Ejected) {
+            return;
+        }
+        logger.info("this server is readmitted!host:" + address);
+        reviveTime = System.currentTimeMillis();
+        state = ServerState.Normal;
+    }
+
+    /**
+     * 一个统计周期内表现正常,逐步减少摘除次数
+     */
+    protected void healthy() {
+        int count = ejectCount;
+        if (count > 0) {
+            ejectCount = count - 1;
+        }
+    }
+
+    public long getEjectedUntil() {
+        return ejectedUntil;
+    }
+
+    /**
+     * 慢启动系数,恢复后在slowStart时间内从0.1线性增加到1
+     */
+    public float getWarmupFactor() {
+        long revive = reviveTime;
+        if (slowStart <= 0 || revive == 0) {
+            return 1;
+        }
+        long elapsed = System.currentTimeMillis() - revive;
+        if (elapsed >= slowStart) {
+            return 1;
+        }
+        return Math.max(0.1f, elapsed / (float) slowStart);
+    }
+
+    /**
+     * 考虑慢启动后的权重
+     */
+    public float getEffectiveWeight() {
+        float w = weightRage > 0 ? weightRage : 1;
+        return w * getWarmupFactor();
+    }
+
     private boolean test() {
         if (testing) {
             return true;
@@ -247,7 +472,7 @@ public class Server {
     }
     
     public int getCurrUserCount() {
-        return currUserCount;
+        return stats.getInFlight();
     }
 
     public int getPort() {
@@ -288,6 +513,6 @@ public class Server {
     
     @Override
     public String toString() {
-        return "Name:" + name + ",Address:" + address + ",Port:" + port + ",Weight:" + weight + ",State:" + state.toString() + ",CurrUserCount:" + currUserCount + ",ScoketPool:" + scoketpool.count();
+        return "Name:" + name + ",Address:" + address + ",Port:" + port + ",Weight:" + weight + ",State:" + state.toString() + ",CurrUserCount:" + stats.getInFlight() + ",ScoketPool:" + scoketpool.count();
     }
 }
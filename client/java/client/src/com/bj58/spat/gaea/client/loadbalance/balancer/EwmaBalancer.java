@@ -0,0 +1,81 @@
+/*
+ *  Copyright Beijing 58 Information Technology Co.,Ltd.
+ *
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package com.bj58.spat.gaea.client.loadbalance.balancer;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.bj58.spat.gaea.client.loadbalance.Server;
+import com.bj58.spat.gaea.client.loadbalance.component.ServerState;
+
+/**
+ * EwmaBalancer
+ * 按 延迟EWMA * (当前请求数 + 1) / 权重 选择代价最小的服务器,
+ * 请求数少但响应慢的服务器(如GC频繁)不会再被持续分配流量。
+ * 延迟EWMA随时间向可用服务器延迟的中位数衰减,还没有样本的服务器也按中位数计算,
+ * 新加入的服务器不会因代价为0而承接全部流量,偶发的高延迟也不会让服务器被永久排除
+ *
+ * @author Service Platform Architecture Team (spat@58.com)
+ */
+public class EwmaBalancer implements ILoadBalancer {
+
+    private final AtomicInteger requestCount = new AtomicInteger(0);
+
+    @Override
+    public Server select(List<Server> servers) {
+        Server result = null;
+        double minCost = Double.MAX_VALUE;
+        double prior = prior(servers);
+        int count = servers.size();
+        int start = (requestCount.getAndIncrement() & Integer.MAX_VALUE) % count;
+        for (int i = start; i < start + count; i++) {
+            Server server = servers.get(i % count);
+            if (server.getState() != ServerState.Normal) {
+                continue;
+            }
+            double cost = server.getLatency(prior) * (server.getCurrUserCount() + 1) / server.getEffectiveWeight();
+            if (cost < minCost) {
+                minCost = cost;
+                result = server;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 有延迟样本的可用服务器的延迟中位数(偶数个时取较小的一个),都没有样本时返回1,此时只按当前请求数和权重选择
+     */
+    private static double prior(List<Server> servers) {
+        double[] latencies = new double[servers.size()];
+        int sampled = 0;
+        for (Server server : servers) {
+            if (server.getState() == ServerState.Normal && server.getStats().hasLatency()) {
+                latencies[sampled++] = server.getLatency();
+            }
+        }
+        if (sampled == 0) {
+            return 1;
+        }
+        Arrays.sort(latencies, 0, sampled);
+        return Math.max(latencies[(sampled - 1) / 2], 0.001);
+    }
+}
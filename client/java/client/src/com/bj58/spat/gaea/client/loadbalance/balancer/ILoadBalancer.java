@@ -0,0 +1,42 @@
+/*
+ *  Copyright Beijing 58 Information Technology Co.,Ltd.
+ *
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package com.bj58.spat.gaea.client.loadbalance.balancer;
+
+import java.util.List;
+
+import com.bj58.spat.gaea.client.loadbalance.Server;
+
+/**
+ * ILoadBalancer
+ * 负载均衡策略,由Dispatcher在处理完死亡服务器的探测后调用;
+ * 策略按Server.getEffectiveWeight()分配流量,慢启动中的服务器由此逐步增加流量
+ *
+ * @author Service Platform Architecture Team (spat@58.com)
+ */
+public interface ILoadBalancer {
+
+    /**
+     * 从servers中选择一个Normal状态的服务器
+     * @param servers 服务器列表,包含非Normal状态的服务器
+     * @return 没有可用的服务器时返回null
+     */
+    Server select(List<Server> servers);
+}
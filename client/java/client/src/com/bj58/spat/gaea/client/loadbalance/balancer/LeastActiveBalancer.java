@@ -0,0 +1,59 @@
+/*
+ *  Copyright Beijing 58 Information Technology Co.,Ltd.
+ *
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package com.bj58.spat.gaea.client.loadbalance.balancer;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.bj58.spat.gaea.client.loadbalance.Server;
+import com.bj58.spat.gaea.client.loadbalance.component.ServerState;
+
+/**
+ * LeastActiveBalancer
+ * 默认策略:选择当前请求数除以权重最小的服务器,起始位置轮转以分散相同负载的服务器;
+ * 慢启动中的服务器权重按预热系数折算,只承担其它服务器相应比例的并发
+ *
+ * @author Service Platform Architecture Team (spat@58.com)
+ */
+public class LeastActiveBalancer implements ILoadBalancer {
+
+    private final AtomicInteger requestCount = new AtomicInteger(0);
+
+    @Override
+    public Server select(List<Server> servers) {
+        Server result = null;
+        float minLoad = 0;
+        int count = servers.size();
+        int start = (requestCount.getAndIncrement() & Integer.MAX_VALUE) % count;
+        for (int i = start; i < start + count; i++) {
+            Server server = servers.get(i % count);
+            if (server.getState() != ServerState.Normal) {
+                continue;
+            }
+            float load = server.getCurrUserCount() / server.getEffectiveWeight();
+            if (result == null || load < minLoad) {
+                minLoad = load;
+                result = server;
+            }
+        }
+        return result;
+    }
+}
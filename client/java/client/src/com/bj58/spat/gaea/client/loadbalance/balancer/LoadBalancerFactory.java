@@ -0,0 +1,54 @@
+/*
+ *  Copyright Beijing 58 Information Technology Co.,Ltd.
+ *
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package com.bj58.spat.gaea.client.loadbalance.balancer;
+
+import com.bj58.spat.gaea.client.utility.logger.ILog;
+import com.bj58.spat.gaea.client.utility.logger.LogFactory;
+
+/**
+ * LoadBalancerFactory
+ * 根据配置&lt;Loadbalance&gt;&lt;Server balance="..."&gt;创建负载均衡策略,
+ * 可选leastactive(默认)、p2c、ewma、roundrobin,或实现ILoadBalancer的类全名
+ *
+ * @author Service Platform Architecture Team (spat@58.com)
+ */
+public class LoadBalancerFactory {
+
+    private static final ILog logger = LogFactory.getLogger(LoadBalancerFactory.class);
+
+    public static ILoadBalancer create(String name) {
+        if (name == null || name.length() == 0 || name.equalsIgnoreCase("leastactive")) {
+            return new LeastActiveBalancer();
+        } else if (name.equalsIgnoreCase("p2c")) {
+            return new PowerOfTwoChoicesBalancer();
+        } else if (name.equalsIgnoreCase("ewma")) {
+            return new EwmaBalancer();
+        } else if (name.equalsIgnoreCase("roundrobin")) {
+            return new WeightedRoundRobinBalancer();
+        }
+        try {
+            return (ILoadBalancer) Class.forName(name).newInstance();
+        } catch (Exception ex) {
+            logger.error("create load balancer error:" + name + ",use leastactive", ex);
+            return new LeastActiveBalancer();
+        }
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ *  Copyright Beijing 58 Information Technology Co.,Ltd.
+ *
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package com.bj58.spat.gaea.client.loadbalance.balancer;
+
+import java.util.List;
+import java.util.Random;
+
+import com.bj58.spat.gaea.client.loadbalance.Server;
+import com.bj58.spat.gaea.client.loadbalance.component.ServerState;
+
+/**
+ * PowerOfTwoChoicesBalancer
+ * 随机选两台服务器,取按权重折算后请求数较少的一台,避免所有客户端同时涌向同一台最空闲的服务器
+ *
+ * @author Service Platform Architecture Team (spat@58.com)
+ */
+public class PowerOfTwoChoicesBalancer implements ILoadBalancer {
+
+    private static final Random random = new Random();
+    private final LeastActiveBalancer fallback = new LeastActiveBalancer();
+
+    @Override
+    public Server select(List<Server> servers) {
+        int count = servers.size();
+        if (count == 1) {
+            return fallback.select(servers);
+        }
+        int a = random.nextInt(count);
+        int b = random.nextInt(count - 1);
+        if (b >= a) {
+            b++;
+        }
+        Server sa = servers.get(a);
+        Server sb = servers.get(b);
+        boolean na = sa.getState() == ServerState.Normal;
+        boolean nb = sb.getState() == ServerState.Normal;
+        if (na && nb) {
+            return load(sa) <= load(sb) ? sa : sb;
+        } else if (na) {
+            return sa;
+        } else if (nb) {
+            return sb;
+        }
+        return fallback.select(servers);
+    }
+
+    private static float load(Server server) {
+        return (server.getCurrUserCount() + 1) / server.getEffectiveWeight();
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ *  Copyright Beijing 58 Information Technology Co.,Ltd.
+ *
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package com.bj58.spat.gaea.client.loadbalance.balancer;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.bj58.spat.gaea.client.loadbalance.Server;
+import com.bj58.spat.gaea.client.loadbalance.component.ServerState;
+
+/**
+ * WeightedRoundRobinBalancer
+ * 平滑加权轮询:每次给所有服务器加上各自权重,选出当前值最大的一台并减去总权重,
+ * 权重大的服务器被选中更多次且不会连续集中
+ *
+ * @author Service Platform Architecture Team (spat@58.com)
+ */
+public class WeightedRoundRobinBalancer implements ILoadBalancer {
+
+    private final Map<Server, float[]> current = new IdentityHashMap<Server, float[]>();
+
+    @Override
+    public synchronized Server select(List<Server> servers) {
+        Server result = null;
+        float[] best = null;
+        float total = 0;
+        for (Server server : servers) {
+            if (server.getState() != ServerState.Normal) {
+                continue;
+            }
+            float weight = server.getEffectiveWeight();
+            float[] cw = current.get(server);
+            if (cw == null) {
+                cw = new float[1];
+                current.put(server, cw);
+            }
+            cw[0] += weight;
+            total += weight;
+            if (best == null || cw[0] > best[0]) {
+                best = cw;
+                result = server;
+            }
+        }
+        if (best != null) {
+            best[0] -= total;
+        }
+        return result;
+    }
+}
@@ -32,5 +32,9 @@ public enum ServerState {
     Busy,
     Disable,
     Reboot,
-    Testing
+    Testing,
+    /**
+     * 成功率或延迟明显差于其它服务器,暂时摘除,到期后慢启动恢复
+     */
+    Ejected
 }
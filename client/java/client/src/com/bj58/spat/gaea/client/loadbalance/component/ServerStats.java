@@ -0,0 +1,280 @@
+/*
+ *  Copyright Beijing 58 Information Technology Co.,Ltd.
+ *
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package com.bj58.spat.gaea.client.loadbalance.component;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * ServerStats
+ * 单台服务器的请求统计:当前请求数、总数、错误数、超时数、延迟EWMA及延迟分布,
+ * 全部基于原子变量,请求线程无需加锁,Dispatcher和监控可随时读取
+ *
+ * @author Service Platform Architecture Team (spat@58.com)
+ */
+public class ServerStats {
+
+    /**
+     * 延迟分布的桶上界(ms),最后一个桶统计超过5000ms的请求
+     */
+    private static final long[] BUCKETS = new long[] { 1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000 };
+    /**
+     * EWMA的时间常数,距上次样本越久新样本权重越大,读取时也按此向先验值衰减
+     */
+    private static final double LATENCY_DECAY_NS = 1000 * 1000000d;
+    /**
+     * 近期延迟分布:桶上界按RECENT_RATIO等比增长(1ms~60s),统计最近一到两个RECENT_WINDOW_NS内的样本
+     */
+    private static final double RECENT_RATIO = 1.1;
+    private static final double LOG_RECENT_RATIO = Math.log(RECENT_RATIO);
+    private static final int RECENT_BUCKETS = (int) Math.ceil(Math.log(60000) / LOG_RECENT_RATIO) + 1;
+    private static final long RECENT_WINDOW_NS = 10000 * 1000000L;
+
+    private final AtomicInteger inFlight = new AtomicInteger(0);
+    private final AtomicLong total = new AtomicLong(0);
+    private final AtomicLong errors = new AtomicLong(0);
+    private final AtomicLong timeouts = new AtomicLong(0);
+    private final AtomicLongArray histogram = new AtomicLongArray(BUCKETS.length + 1);
+    /**
+     * 响应延迟的EWMA(ms),小于0表示还没有样本
+     */
+    private volatile double latency = -1;
+    private volatile long latencyTime = 0;
+    private volatile AtomicLongArray recent = new AtomicLongArray(RECENT_BUCKETS);
+    private volatile AtomicLongArray previous = new AtomicLongArray(RECENT_BUCKETS);
+    private volatile long recentStart = System.nanoTime();
+
+    public void requestStart() {
+        inFlight.incrementAndGet();
+        total.incrementAndGet();
+    }
+
+    public void requestEnd() {
+        int current;
+        while ((current = inFlight.get()) > 0) {
+            if (inFlight.compareAndSet(current, current - 1)) {
+                return;
+            }
+        }
+    }
+
+    public void recordError() {
+        errors.incrementAndGet();
+    }
+
+    /**
+     * 超时按已等待的时间计入延迟
+     */
+    public void recordTimeout(long nanos) {
+        timeouts.incrementAndGet();
+        recordLatency(nanos);
+    }
+
+    /**
+     * 记录一次请求的延迟,按时间衰减的EWMA;比当前值大时直接取新值,使变慢的服务器能被立即发现。
+     * 并发更新时可能丢失个别样本,对估计值影响可以忽略
+     * @param nanos 请求耗时(纳秒)
+     */
+    public void recordLatency(long nanos) {
+        recordLatency(nanos, System.nanoTime());
+    }
+
+    void recordLatency(long nanos, long now) {
+        double ms = nanos / 1000000d;
+        histogram.incrementAndGet(bucket(ms));
+        if (now - recentStart >= RECENT_WINDOW_NS) {
+            rotate(now);
+        }
+        recent.incrementAndGet(recentBucket(ms));
+        double last = latency;
+        if (last < 0 || ms > last) {
+            latency = ms;
+        } else {
+            double w = Math.exp(-(now - latencyTime) / LATENCY_DECAY_NS);
+            latency = last * w + ms * (1 - w);
+        }
+        latencyTime = now;
+    }
+
+    /**
+     * 当前窗口结束后成为上一个窗口,超过两个窗口没有样本时全部清空
+     */
+    private synchronized void rotate(long now) {
+        long elapsed = now - recentStart;
+        if (elapsed < RECENT_WINDOW_NS) {
+            return;
+        }
+        previous = elapsed < 2 * RECENT_WINDOW_NS ? recent : new AtomicLongArray(RECENT_BUCKETS);
+        recent = new AtomicLongArray(RECENT_BUCKETS);
+        recentStart = now;
+    }
+
+    private static int recentBucket(double ms) {
+        if (ms <= 1) {
+            return 0;
+        }
+        return Math.min((int) Math.ceil(Math.log(ms) / LOG_RECENT_RATIO), RECENT_BUCKETS - 1);
+    }
+
+    private static int bucket(double ms) {
+        for (int i = 0; i < BUCKETS.length; i++) {
+            if (ms <= BUCKETS[i]) {
+                return i;
+            }
+        }
+        return BUCKETS.length;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    public long getTotal() {
+        return total.get();
+    }
+
+    public long getErrors() {
+        return errors.get();
+    }
+
+    public long getTimeouts() {
+        return timeouts.get();
+    }
+
+    /**
+     * 最近一次样本时的延迟EWMA(ms),不随时间衰减,还没有样本时返回0
+     */
+    public double getLatency() {
+        double l = latency;
+        return l < 0 ? 0 : l;
+    }
+
+    public boolean hasLatency() {
+        return latency >= 0;
+    }
+
+    /**
+     * 用于选择服务器的延迟估计(ms):距上次样本越久越接近prior,
+     * 一次超时等偶发的高延迟不会让服务器因再也收不到请求而一直被排除
+     * @param prior 先验延迟,一般取其它服务器的中位数,还没有样本时直接返回
+     */
+    public double getLatency(double prior) {
+        return getLatency(prior, System.nanoTime());
+    }
+
+    double getLatency(double prior, long now) {
+        double l = latency;
+        if (l < 0) {
+            return prior;
+        }
+        double w = Math.exp(-(now - latencyTime) / LATENCY_DECAY_NS);
+        return prior + (l - prior) * w;
+    }
+
+    /**
+     * 延迟分布的快照,下标与getBuckets()对应,多出的最后一个为超过最大上界的请求数
+     */
+    public long[] getHistogram() {
+        long[] result = new long[histogram.length()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = histogram.get(i);
+        }
+        return result;
+    }
+
+    public static long[] getBuckets() {
+        return BUCKETS.clone();
+    }
+
+    /**
+     * 按延迟分布估算百分位延迟,返回所在桶的上界(ms)
+     * @param percent 0~1
+     * @return 没有样本时返回-1
+     */
+    public long getPercentile(double percent) {
+        return getPercentile(getHistogram(), percent);
+    }
+
+    /**
+     * 按近期(最近10~20秒)的延迟分布估算百分位延迟,误差在10%以内,用于对冲等需要跟随当前延迟的场景
+     * @param percent 0~1
+     * @return 近期没有样本时返回-1
+     */
+    public long getRecentPercentile(double percent) {
+        return getRecentPercentile(percent, System.nanoTime());
+    }
+
+    long getRecentPercentile(double percent, long now) {
+        if (now - recentStart >= RECENT_WINDOW_NS) {
+            rotate(now);
+        }
+        AtomicLongArray cur = recent;
+        AtomicLongArray prev = previous;
+        long[] snapshot = new long[RECENT_BUCKETS];
+        long count = 0;
+        for (int i = 0; i < RECENT_BUCKETS; i++) {
+            snapshot[i] = cur.get(i) + prev.get(i);
+            count += snapshot[i];
+        }
+        if (count == 0) {
+            return -1;
+        }
+        long target = (long) Math.ceil(count * percent);
+        long sum = 0;
+        int i = 0;
+        for (; i < RECENT_BUCKETS - 1; i++) {
+            sum += snapshot[i];
+            if (sum >= target) {
+                break;
+            }
+        }
+        return (long) Math.ceil(Math.pow(RECENT_RATIO, i));
+    }
+
+    /**
+     * 按给定的延迟分布(如两个getHistogram()快照之差)估算百分位延迟
+     * @return 没有样本时返回-1
+     */
+    public static long getPercentile(long[] snapshot, double percent) {
+        long count = 0;
+        for (long c : snapshot) {
+            count += c;
+        }
+        if (count == 0) {
+            return -1;
+        }
+        long target = (long) Math.ceil(count * percent);
+        long sum = 0;
+        for (int i = 0; i < BUCKETS.length; i++) {
+            sum += snapshot[i];
+            if (sum >= target) {
+                return BUCKETS[i];
+            }
+        }
+        return BUCKETS[BUCKETS.length - 1] * 2;
+    }
+
+    @Override
+    public String toString() {
+        return "InFlight:" + getInFlight() + ",Total:" + getTotal() + ",Errors:" + getErrors() + ",Timeouts:" + getTimeouts() + ",Latency:" + getLatency() + "ms";
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ *  Copyright Beijing 58 Information Technology Co.,Ltd.
+ *
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package com.bj58.spat.gaea.client.proxy;
+
+/**
+ * HedgeBudget
+ * 对冲请求的预算:只统计最近一个窗口内的可对冲调用数和对冲请求数,
+ * 对冲请求数不超过调用数的percent%;空闲时不会积攒预算,故障开始时不会集中发出大量对冲请求
+ *
+ * @author Service Platform Architecture Team (spat@58.com)
+ */
+class HedgeBudget {
+
+    private static final int SLOTS = 10;
+    private final long slotMillis;
+    private final int percent;
+    private final long[] calls = new long[SLOTS];
+    private final long[] hedges = new long[SLOTS];
+    private long currentSlot = -1;
+
+    /**
+     * @param windowMillis 统计窗口(ms)
+     * @param percent 对冲请求数占调用数的最大百分比
+     */
+    HedgeBudget(long windowMillis, int percent) {
+        this.slotMillis = Math.max(1, windowMillis / SLOTS);
+        this.percent = percent;
+    }
+
+    /**
+     * 记录一次可对冲的调用
+     */
+    void deposit() {
+        deposit(System.currentTimeMillis());
+    }
+
+    synchronized void deposit(long now) {
+        calls[advance(now)]++;
+    }
+
+    /**
+     * @return false 窗口内的对冲请求已达上限
+     */
+    boolean tryAcquire() {
+        return tryAcquire(System.currentTimeMillis());
+    }
+
+    synchronized boolean tryAcquire(long now) {
+        int idx = advance(now);
+        long c = 0;
+        long h = 0;
+        for (int i = 0; i < SLOTS; i++) {
+            c += calls[i];
+            h += hedges[i];
+        }
+        if ((h + 1) * 100 > c * percent) {
+            return false;
+        }
+        hedges[idx]++;
+        return true;
+    }
+
+    /**
+     * 移动到now所在的分段,清空已滑出窗口的分段
+     */
+    private int advance(long now) {
+        long slot = now / slotMillis;
+        if (currentSlot < 0 || slot - currentSlot >= SLOTS) {
+            for (int i = 0; i < SLOTS; i++) {
+                calls[i] = 0;
+                hedges[i] = 0;
+            }
+            currentSlot = slot;
+        } else {
+            while (currentSlot < slot) {
+                currentSlot++;
+                int i = (int) (currentSlot % SLOTS);
+                calls[i] = 0;
+                hedges[i] = 0;
+            }
+        }
+        return (int) (currentSlot % SLOTS);
+    }
+}
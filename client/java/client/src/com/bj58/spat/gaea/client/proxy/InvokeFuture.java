@@ -0,0 +1,161 @@
+/*
+ *  Copyright Beijing 58 Information Technology Co.,Ltd.
+ *
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package com.bj58.spat.gaea.client.proxy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.bj58.spat.gaea.client.utility.IAsyncHandler;
+import com.bj58.spat.gaea.client.utility.logger.ILog;
+import com.bj58.spat.gaea.client.utility.logger.LogFactory;
+
+/**
+ * InvokeFuture
+ * 
+ * 异步调用的结果,由接收到对应sessionId的数据包时直接完成。
+ * 既可以get()等待结果,也可以通过addHandler注册回调。
+ * 
+ * 契约接口中返回值为Future(或InvokeFuture)的方法,ProxyFactory.create生成的代理会以异步方式调用
+ * 
+ * @author Service Platform Architecture Team (spat@58.com)
+ */
+public class InvokeFuture<V> implements Future<V> {
+
+	private static final ILog logger = LogFactory.getLogger(InvokeFuture.class);
+	private final CountDownLatch latch = new CountDownLatch(1);
+	private final AtomicBoolean completed = new AtomicBoolean(false);
+	private final List<IAsyncHandler<V>> handlers = new ArrayList<IAsyncHandler<V>>();
+	private boolean notified = false;
+	private volatile boolean cancelled = false;
+	private volatile V result;
+	private volatile Throwable exception;
+
+	public boolean setResult(V result) {
+		if (!completed.compareAndSet(false, true)) {
+			return false;
+		}
+		this.result = result;
+		latch.countDown();
+		notifyHandlers();
+		return true;
+	}
+
+	public boolean setException(Throwable exception) {
+		if (!completed.compareAndSet(false, true)) {
+			return false;
+		}
+		this.exception = exception;
+		latch.countDown();
+		notifyHandlers();
+		return true;
+	}
+
+	/**
+	 * 注册回调,如果已经完成则在当前线程立即回调
+	 * @param handler
+	 */
+	public void addHandler(IAsyncHandler<V> handler) {
+		synchronized (handlers) {
+			if (!notified) {
+				handlers.add(handler);
+				return;
+			}
+		}
+		notifyHandler(handler);
+	}
+
+	@Override
+	public boolean cancel(boolean mayInterruptIfRunning) {
+		if (!completed.compareAndSet(false, true)) {
+			return false;
+		}
+		this.cancelled = true;
+		this.exception = new CancellationException();
+		latch.countDown();
+		notifyHandlers();
+		return true;
+	}
+
+	@Override
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	@Override
+	public boolean isDone() {
+		return latch.getCount() == 0;
+	}
+
+	@Override
+	public V get() throws InterruptedException, ExecutionException {
+		latch.await();
+		return report();
+	}
+
+	@Override
+	public V get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+		if (!latch.await(timeout, unit)) {
+			throw new TimeoutException("wait invoke result timeout!timeout:" + unit.toMillis(timeout) + "ms");
+		}
+		return report();
+	}
+
+	private V report() throws ExecutionException {
+		if (cancelled) {
+			throw new CancellationException();
+		}
+		if (exception != null) {
+			throw new ExecutionException(exception);
+		}
+		return result;
+	}
+
+	private void notifyHandlers() {
+		List<IAsyncHandler<V>> list = null;
+		synchronized (handlers) {
+			notified = true;
+			list = new ArrayList<IAsyncHandler<V>>(handlers);
+			handlers.clear();
+		}
+		for (IAsyncHandler<V> handler : list) {
+			notifyHandler(handler);
+		}
+	}
+
+	private void notifyHandler(IAsyncHandler<V> handler) {
+		try {
+			if (exception != null) {
+				handler.exceptionCaught(exception);
+			} else {
+				handler.messageReceived(result);
+			}
+		} catch (Throwable ex) {
+			logger.error("InvokeFuture handler error", ex);
+		}
+	}
+}
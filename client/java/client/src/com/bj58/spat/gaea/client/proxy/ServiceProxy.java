@@ -25,12 +25,18 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import com.bj58.spat.gaea.client.GaeaConst;
 import com.bj58.spat.gaea.client.configuration.ServiceConfig;
 import com.bj58.spat.gaea.client.loadbalance.Dispatcher;
 import com.bj58.spat.gaea.client.loadbalance.Server;
 import com.bj58.spat.gaea.client.proxy.builder.Parameter;
+import com.bj58.spat.gaea.client.utility.IAsyncHandler;
+import com.bj58.spat.gaea.client.utility.ICancelable;
 import com.bj58.spat.gaea.client.utility.logger.ILog;
 import com.bj58.spat.gaea.client.utility.logger.LogFactory;
 import com.bj58.spat.gaea.protocol.exception.RebootException;
@@ -55,10 +61,11 @@ public class ServiceProxy {
 
     private Dispatcher dispatcher;
     private ServiceConfig config;
-    private int sessionId = 1;
+    private final AtomicInteger sessionId = new AtomicInteger(0);
     private int requestTime = 0;//超时重连次数
     private int ioreconnect = 0;//IO服务切换次数
     private int count = 0;
+    private final HedgeBudget hedgeBudget = new HedgeBudget(GaeaConst.HEDGE_WINDOW, GaeaConst.HEDGE_PERCENT);
     private static final ILog logger = LogFactory.getLogger(ServiceProxy.class);
     private static final Object locker = new Object();
     private static final HashMap<String, ServiceProxy> Proxys = new HashMap<String, ServiceProxy>();
@@ -110,18 +117,7 @@ public class ServiceProxy {
 
     public InvokeResult invoke(Parameter returnType, String typeName, String methodName, Parameter[] paras) throws Exception, Throwable {
         long watcher = System.currentTimeMillis();
-        List<KeyValuePair> listPara = new ArrayList<KeyValuePair>();
-        for (Parameter p : paras) {
-            listPara.add(new KeyValuePair(p.getSimpleName(), p.getValue()));
-        }
-        RequestProtocol requestProtocol = new RequestProtocol(typeName, methodName, listPara);
-        Protocol sendP = new Protocol(createSessionId(), 
-        		(byte) config.getServiceid(),
-        		SDPType.Request,
-        		CompressType.UnCompress,
-        		config.getProtocol().getSerializerType(),
-        		PlatformType.Java,
-        		requestProtocol);
+        Protocol sendP = createRequestProtocol(typeName, methodName, paras);
         
         Protocol receiveP = null;
         Server server = null;
@@ -172,7 +168,9 @@ public class ServiceProxy {
         
         if (receiveP.getSDPType() == SDPType.Response) {
             ResponseProtocol rp = (ResponseProtocol)receiveP.getSdpEntity();
-            logger.debug("invoke time:" + (System.currentTimeMillis() - watcher) + "ms");
+            if (logger.isDebugEnabled()) {
+                logger.debug("invoke time:" + (System.currentTimeMillis() - watcher) + "ms");
+            }
             return new InvokeResult(rp.getResult(), rp.getOutpara());
         } else if(receiveP.getSDPType() == SDPType.Reset){ //服务重启
         	logger.info(server.getName()+" server is reboot,system will change normal server!");
@@ -186,6 +184,83 @@ public class ServiceProxy {
         }
     }
     
+    /**
+     * 异步调用,请求发送后立即返回,结果由接收到对应sessionId的响应时直接完成
+     * 失败重试的策略与invoke相同
+     * @param returnType 返回值类型
+     * @param typeName lookup
+     * @param methodName 方法名
+     * @param paras 参数
+     * @return InvokeFuture
+     * @throws Exception
+     */
+    public InvokeFuture<InvokeResult> invokeAsync(Parameter returnType, String typeName, String methodName, Parameter[] paras) throws Exception {
+        Protocol sendP = createRequestProtocol(typeName, methodName, paras);
+        InvokeFuture<InvokeResult> future = new InvokeFuture<InvokeResult>();
+        new AsyncInvocation(sendP, future, null, new AtomicInteger(0)).request();
+        return future;
+    }
+
+    /**
+     * 幂等方法的对冲调用,第一份请求超过hedgeDelay没有返回时向另一台服务器再发送一份(新的sessionId),
+     * 先返回的结果生效,另一份按sessionId注销等待,之后到达的响应被丢弃
+     * 最近HEDGE_WINDOW内的对冲请求数不超过调用数的HEDGE_PERCENT%,避免服务整体变慢时放大压力;
+     * 两份请求共用invoke的重试次数限制
+     * @param hedgeDelay 对冲延迟(ms),小于等于0时取第一台服务器近期响应延迟的P95
+     */
+    public InvokeResult invokeHedged(Parameter returnType, String typeName, String methodName, Parameter[] paras, long hedgeDelay) throws Exception, Throwable {
+        hedgeBudget.deposit();
+        HedgedInvocation hedged = new HedgedInvocation(typeName, methodName, paras);
+        Server first = hedged.launch(null);
+        long delay = getHedgeDelay(first, hedgeDelay);
+        try {
+            if (delay > 0) {
+                try {
+                    return hedged.future.get(delay, TimeUnit.MILLISECONDS);
+                } catch (java.util.concurrent.TimeoutException te) {
+                    if (!hedged.future.isDone() && hedgeBudget.tryAcquire()) {
+                        logger.debug("hedge request after " + delay + "ms,first server:" + first.getName());
+                        hedged.launch(first);
+                    }
+                }
+            }
+            return hedged.future.get();
+        } catch (ExecutionException ee) {
+            throw ee.getCause();
+        }
+    }
+
+    /**
+     * @return 小于等于0时不对冲
+     */
+    private long getHedgeDelay(Server first, long hedgeDelay) {
+        if (first == null || dispatcher.GetAllServer().size() < 2) {
+            return 0;
+        }
+        long delay = hedgeDelay > 0 ? hedgeDelay : first.getStats().getRecentPercentile(GaeaConst.HEDGE_PERCENTILE);
+        if (delay >= config.getSocketPool().getReceiveTimeout()) {
+            return 0;
+        }
+        return delay;
+    }
+
+    private Protocol createRequestProtocol(String typeName, String methodName, Parameter[] paras) {
+        List<KeyValuePair> listPara = new ArrayList<KeyValuePair>();
+        for (Parameter p : paras) {
+            listPara.add(new KeyValuePair(p.getSimpleName(), p.getValue()));
+        }
+        RequestProtocol requestProtocol = new RequestProtocol(typeName, methodName, listPara);
+        //每次发送最多等待receiveTimeout,服务端据此丢弃调用方已经放弃的请求
+        requestProtocol.setTimeout(config.getSocketPool().getReceiveTimeout());
+        return new Protocol(createSessionId(), 
+        		(byte) config.getServiceid(),
+        		SDPType.Request,
+        		CompressType.UnCompress,
+        		config.getProtocol().getSerializerType(),
+        		PlatformType.Java,
+        		requestProtocol);
+    }
+
     /**
      * 设置当前重启服务
      * @param server
@@ -236,15 +311,211 @@ public class ServiceProxy {
     }
     
 
+    /**
+     * sessionId在[1, MAX_SESSIONID]内循环递增
+     */
     private int createSessionId() {
-        synchronized (this) {
-            if (sessionId > GaeaConst.MAX_SESSIONID) {
-                sessionId = 1;
+        for (;;) {
+            int current = sessionId.get();
+            int next = (current >= GaeaConst.MAX_SESSIONID) ? 1 : current + 1;
+            if (sessionId.compareAndSet(current, next)) {
+                return next;
             }
-            return sessionId++;
         }
     }
     
+    /**
+     * 一次异步调用的状态,IO异常、服务重启、超时后按invoke相同的次数限制切换服务器重试
+     */
+    private class AsyncInvocation implements IAsyncHandler<Protocol> {
+
+        private final Protocol sendP;
+        private final InvokeFuture<InvokeResult> future;
+        private final Server avoid;
+        private final long watcher = System.currentTimeMillis();
+        private final AtomicInteger times;
+        private volatile Server server;
+        private volatile ICancelable pending;
+        private volatile boolean cancelled = false;
+
+        /**
+         * @param avoid 尽量不选择的服务器,对冲请求用来避开第一份请求所在的服务器
+         * @param times 已重试的次数,对冲调用的各份请求共用同一个计数
+         */
+        AsyncInvocation(Protocol sendP, InvokeFuture<InvokeResult> future, Server avoid, AtomicInteger times) {
+            this.sendP = sendP;
+            this.future = future;
+            this.avoid = avoid;
+            this.times = times;
+        }
+
+        void request() {
+            while (!cancelled) {
+                server = dispatcher.GetServer();
+                for (int i = 0; avoid != null && server == avoid && i < ioreconnect; i++) {
+                    server = dispatcher.GetServer();
+                }
+                if (server == null) {
+                    logger.error("cannot get server");
+                    future.setException(new Exception("cannot get server"));
+                    return;
+                }
+                try {
+                    ICancelable c = server.requestAsync(sendP, this);
+                    pending = c;
+                    if (cancelled) {
+                        c.cancel();
+                    }
+                    return;
+                } catch (Throwable ex) {
+                    if (!retry(ex)) {
+                        return;
+                    }
+                }
+            }
+        }
+
+        /**
+         * @return 需要重试时返回true,否则以异常结束future并返回false
+         */
+        private boolean retry(Throwable ex) {
+            if (cancelled) {
+                return false;
+            }
+            int i = times.getAndIncrement();
+            if (ex instanceof IOException || ex instanceof RebootException) {
+                if (ex instanceof RebootException) {
+                    try {
+                        createReboot(server);
+                    } catch (Throwable e) {
+                        logger.error("createReboot error", e);
+                    }
+                }
+                if (i < count && i < ioreconnect) {
+                    logger.error(server.getName() + " server has " + ex.getClass().getSimpleName() + ",system will change normal server!");
+                    return true;
+                }
+                future.setException(ex instanceof RebootException ? new IOException("connect fail!") : ex);
+                return false;
+            }
+            if (ex instanceof TimeoutException) {
+                if (i < count && i < requestTime) {
+                    logger.error(server.getName() + " server has TimeoutException,system will change normal server!");
+                    return true;
+                }
+                future.setException(new TimeoutException("Receive data timeout or error!"));
+                return false;
+            }
+            logger.error("invoke other Exception", ex);
+            future.setException(ex);
+            return false;
+        }
+
+        @Override
+        public void messageReceived(Protocol receiveP) {
+            if (receiveP.getSDPType() == SDPType.Response) {
+                ResponseProtocol rp = (ResponseProtocol) receiveP.getSdpEntity();
+                if (logger.isDebugEnabled()) {
+                    logger.debug("invoke time:" + (System.currentTimeMillis() - watcher) + "ms");
+                }
+                future.setResult(new InvokeResult(rp.getResult(), rp.getOutpara()));
+            } else if (receiveP.getSDPType() == SDPType.Reset) { //服务重启
+                logger.info(server.getName() + " server is reboot,system will change normal server!");
+                exceptionCaught(new RebootException("this server is reboot!"));
+            } else if (receiveP.getSDPType() == SDPType.Exception) {
+                ExceptionProtocol ep = (ExceptionProtocol) receiveP.getSdpEntity();
+                future.setException(ThrowErrorHelper.throwServiceError(ep.getErrorCode(), ep.getErrorMsg(), ep.getSubErrorCode(), ep.getSubErrorMsg()));
+            } else {
+                future.setException(new Exception("userdatatype error!"));
+            }
+        }
+
+        @Override
+        public void exceptionCaught(Throwable e) {
+            if (retry(e)) {
+                request();
+            }
+        }
+
+        /**
+         * 不再等待响应也不再重试
+         */
+        void cancel() {
+            cancelled = true;
+            ICancelable c = pending;
+            if (c != null) {
+                c.cancel();
+            }
+        }
+    }
+
+    /**
+     * 对冲调用,各份请求的结果汇总到future,第一个成功的结果生效并取消其它请求,全部失败时以最后一个异常结束
+     */
+    private class HedgedInvocation implements IAsyncHandler<InvokeResult> {
+
+        private final String typeName;
+        private final String methodName;
+        private final Parameter[] paras;
+        private final InvokeFuture<InvokeResult> future = new InvokeFuture<InvokeResult>();
+        private final AtomicReferenceArray<AsyncInvocation> attempts = new AtomicReferenceArray<AsyncInvocation>(2);
+        private final AtomicInteger launched = new AtomicInteger(0);
+        private final AtomicInteger failed = new AtomicInteger(0);
+        private final AtomicInteger retries = new AtomicInteger(0);
+
+        HedgedInvocation(String typeName, String methodName, Parameter[] paras) {
+            this.typeName = typeName;
+            this.methodName = methodName;
+            this.paras = paras;
+        }
+
+        /**
+         * 发出一份请求,每份请求使用新的sessionId
+         * @return 请求发往的服务器
+         */
+        Server launch(Server avoid) {
+            InvokeFuture<InvokeResult> f = new InvokeFuture<InvokeResult>();
+            AsyncInvocation invocation = new AsyncInvocation(createRequestProtocol(typeName, methodName, paras), f, avoid, retries);
+            attempts.set(launched.getAndIncrement(), invocation);
+            f.addHandler(this);
+            invocation.request();
+            if (future.isDone()) {
+                invocation.cancel();
+            }
+            return invocation.server;
+        }
+
+        @Override
+        public void messageReceived(InvokeResult result) {
+            if (future.setResult(result)) {
+                cancelAll();
+            }
+        }
+
+        /**
+         * 服务端返回的异常同样是结果,直接生效;IO异常和超时则等待其它请求
+         */
+        @Override
+        public void exceptionCaught(Throwable e) {
+            if (e instanceof IOException || e instanceof TimeoutException) {
+                if (failed.incrementAndGet() >= launched.get()) {
+                    future.setException(e);
+                }
+            } else if (future.setException(e)) {
+                cancelAll();
+            }
+        }
+
+        private void cancelAll() {
+            for (int i = 0; i < attempts.length(); i++) {
+                AsyncInvocation invocation = attempts.get(i);
+                if (invocation != null) {
+                    invocation.cancel();
+                }
+            }
+        }
+    }
+
     /**
      * invoke result
      * <typeparam name="T">result data type</typeparam>
@@ -0,0 +1,131 @@
+/*
+ *  Copyright Beijing 58 Information Technology Co.,Ltd.
+ *
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package com.bj58.spat.gaea.client.proxy.builder;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Type;
+import java.util.concurrent.Future;
+
+import com.bj58.spat.gaea.server.contract.annotation.AnnotationUtil;
+import com.bj58.spat.gaea.server.contract.annotation.Idempotent;
+import com.bj58.spat.gaea.server.contract.annotation.OperationContract;
+import com.bj58.spat.gaea.server.contract.entity.Out;
+
+/**
+ * InvokePlan
+ * 契约方法的调用信息,创建代理时按Method生成一次,每次调用只需要绑定参数值
+ *
+ * @author Service Platform Architecture Team (spat@58.com)
+ */
+class InvokePlan {
+
+    private final String lookup;
+    private final String methodName;
+    /**
+     * 参数类型描述,value为null
+     */
+    private final Parameter[] paraTypes;
+    private final Parameter returnPara;
+    private final boolean async;
+    private final boolean idempotent;
+    private final int hedgeDelay;
+    /**
+     * lookup.方法名,用于日志
+     */
+    private final String name;
+
+    InvokePlan(String lookup, Method method) throws ClassNotFoundException {
+        this.lookup = lookup;
+        Type[] typeAry = method.getGenericParameterTypes();
+        Class<?>[] clsAry = method.getParameterTypes();
+        paraTypes = new Parameter[typeAry.length];
+        for (int i = 0; i < typeAry.length; i++) {
+            ParaType ptype = Out.class.isAssignableFrom(clsAry[i]) ? ParaType.Out : ParaType.In;
+            paraTypes[i] = new Parameter(null, clsAry[i], typeAry[i], ptype);
+        }
+
+        String name = method.getName();
+        OperationContract ann = method.getAnnotation(OperationContract.class);
+        if (ann != null && !ann.methodName().equals(AnnotationUtil.DEFAULT_VALUE)) {
+            name = "$" + ann.methodName();
+        }
+        this.methodName = name;
+        this.name = lookup + "." + method.getName();
+
+        this.async = Future.class.isAssignableFrom(method.getReturnType());
+        this.returnPara = async ? null : new Parameter(null, method.getReturnType(), method.getGenericReturnType());
+
+        Idempotent idem = method.getAnnotation(Idempotent.class);
+        this.idempotent = (idem != null);
+        this.hedgeDelay = (idem != null) ? idem.hedgeDelay() : 0;
+    }
+
+    /**
+     * 绑定参数值
+     * 实参是否为Out与声明不一致时(如Out参数传入null)按实参重新生成描述,与逐次反射的结果保持一致
+     */
+    Parameter[] bind(Object[] args) throws ClassNotFoundException {
+        Parameter[] paras = new Parameter[args.length];
+        for (int i = 0; i < args.length; i++) {
+            Parameter p = paraTypes[i];
+            boolean out = args[i] instanceof Out;
+            if (out == (p.getParaType() == ParaType.Out)) {
+                paras[i] = new Parameter(p, args[i]);
+            } else {
+                paras[i] = new Parameter(args[i], p.getClazz(), p.getType(), out ? ParaType.Out : ParaType.In);
+            }
+        }
+        return paras;
+    }
+
+    int getParaCount() {
+        return paraTypes.length;
+    }
+
+    String getLookup() {
+        return lookup;
+    }
+
+    String getMethodName() {
+        return methodName;
+    }
+
+    Parameter getReturnPara() {
+        return returnPara;
+    }
+
+    boolean isAsync() {
+        return async;
+    }
+
+    boolean isIdempotent() {
+        return idempotent;
+    }
+
+    int getHedgeDelay() {
+        return hedgeDelay;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
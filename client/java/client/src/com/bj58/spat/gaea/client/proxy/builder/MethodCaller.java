@@ -21,16 +21,16 @@
 package com.bj58.spat.gaea.client.proxy.builder;
 
 import java.lang.reflect.Method;
-import java.lang.reflect.Type;
-import java.util.ArrayList;
-import java.util.List;
+import java.lang.reflect.UndeclaredThrowableException;
+import java.util.concurrent.ConcurrentHashMap;
 
+import com.bj58.spat.gaea.client.proxy.InvokeFuture;
 import com.bj58.spat.gaea.client.proxy.ServiceProxy;
 import com.bj58.spat.gaea.client.proxy.ServiceProxy.InvokeResult;
+import com.bj58.spat.gaea.client.utility.IAsyncHandler;
 import com.bj58.spat.gaea.client.utility.logger.ILog;
 import com.bj58.spat.gaea.client.utility.logger.LogFactory;
-import com.bj58.spat.gaea.server.contract.annotation.AnnotationUtil;
-import com.bj58.spat.gaea.server.contract.annotation.OperationContract;
+import com.bj58.spat.gaea.client.utility.logger.RequestLog;
 import com.bj58.spat.gaea.server.contract.entity.Out;
 
 /**
@@ -43,6 +43,12 @@ public class MethodCaller {
 	private static final ILog logger = LogFactory.getLogger(MethodCaller.class);
 	private String serviceName;
     private String lookup;
+    private final ConcurrentHashMap<Method, InvokePlan> plans = new ConcurrentHashMap<Method, InvokePlan>();
+    /**
+     * 生成的客户端存根按序号调用的方法
+     */
+    private Method[] stubMethods;
+    private InvokePlan[] stubPlans;
     
 
     public MethodCaller(String serviceName, String lookup) {
@@ -50,48 +56,146 @@ public class MethodCaller {
         this.lookup = lookup;
     }
 
+    /**
+     * 为接口的所有方法预先生成调用信息,生成失败的方法在调用时再生成(并抛出异常)
+     * @param type 契约接口
+     */
+    public void prepare(Class<?> type) {
+        for (Method m : type.getMethods()) {
+            try {
+                getPlan(m);
+            } catch (Exception e) {
+                logger.warn("prepare method " + m.getName() + " error:" + e.getMessage());
+            }
+        }
+    }
+
+    private InvokePlan getPlan(Method methodInfo) throws ClassNotFoundException {
+        InvokePlan plan = plans.get(methodInfo);
+        if (plan == null) {
+            plan = new InvokePlan(lookup, methodInfo);
+            InvokePlan old = plans.putIfAbsent(methodInfo, plan);
+            if (old != null) {
+                plan = old;
+            }
+        }
+        return plan;
+    }
+
+    /**
+     * 设置生成的客户端存根中方法的序号
+     */
+    void setStubMethods(Method[] methods) {
+        InvokePlan[] ps = new InvokePlan[methods.length];
+        for (int i = 0; i < methods.length; i++) {
+            ps[i] = plans.get(methods[i]);
+        }
+        this.stubMethods = methods;
+        this.stubPlans = ps;
+    }
+
+    /**
+     * 生成的客户端存根调用的入口,与动态代理一样,未声明的受检异常包装为UndeclaredThrowableException
+     * @param index 方法序号
+     * @param args 参数
+     */
+    public Object invoke(int index, Object[] args) throws Throwable {
+        InvokePlan plan = stubPlans[index];
+        if (plan == null) {
+            plan = getPlan(stubMethods[index]);
+            stubPlans[index] = plan;
+        }
+        try {
+            return doMethodCall(args, plan);
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Error e) {
+            throw e;
+        } catch (Throwable e) {
+            for (Class<?> ex : stubMethods[index].getExceptionTypes()) {
+                if (ex.isInstance(e)) {
+                    throw e;
+                }
+            }
+            throw new UndeclaredThrowableException(e);
+        }
+    }
+
     public Object doMethodCall(Object[] args, Method methodInfo) throws Exception, Throwable {
-        Type[] typeAry = methodInfo.getGenericParameterTypes();
-        Class<?>[] clsAry = methodInfo.getParameterTypes();
+        return doMethodCall(args, getPlan(methodInfo));
+    }
+
+    private Object doMethodCall(Object[] args, InvokePlan plan) throws Exception, Throwable {
+        long start = System.currentTimeMillis();
+        try {
+            return call(args, plan);
+        } finally {
+            long total = System.currentTimeMillis() - start;
+            if (total > 200) {
+                logger.warn("method:" + plan + " invoke time :" + total);
+            } else if (RequestLog.sample(plan)) {
+                RequestLog.log(plan, total, null);
+            }
+        }
+    }
+
+    private Object call(Object[] args, InvokePlan plan) throws Exception, Throwable {
         if (args == null) {
             args = new Object[0];
         }
-        if (args.length != typeAry.length) {
+        if (args.length != plan.getParaCount()) {
             throw new Exception("argument count error!");
         }
 
         ServiceProxy proxy = ServiceProxy.getProxy(serviceName);
-        Parameter[] paras = new Parameter[args.length];
-        List<Integer> outParas = new ArrayList<Integer>();
-
-        if (typeAry != null) {
-            for (int i = 0; i < typeAry.length; i++) {
-                if (args[i] instanceof Out) {
-                    paras[i] = new Parameter(args[i], clsAry[i], typeAry[i], ParaType.Out);
-                    outParas.add(i);
-                } else {
-                    paras[i] = new Parameter(args[i], clsAry[i], typeAry[i], ParaType.In);
-                }
-            }
+        Parameter[] paras = plan.bind(args);
+
+        if (plan.isAsync()) {
+            return doAsyncMethodCall(proxy, plan, paras, args);
         }
-        Parameter returnPara = new Parameter(null, methodInfo.getReturnType(), methodInfo.getGenericReturnType());
-        String methodName = methodInfo.getName();
-        OperationContract ann = methodInfo.getAnnotation(OperationContract.class);
-        if (ann != null) {
-            if (!ann.methodName().equals(AnnotationUtil.DEFAULT_VALUE)) {
-                methodName = "$" + ann.methodName();
-            }
+
+        InvokeResult result = null;
+        if (plan.isIdempotent()) {
+            result = proxy.invokeHedged(plan.getReturnPara(), plan.getLookup(), plan.getMethodName(), paras, plan.getHedgeDelay());
+        } else {
+            result = proxy.invoke(plan.getReturnPara(), plan.getLookup(), plan.getMethodName(), paras);
         }
-        InvokeResult result = proxy.invoke(returnPara, lookup, methodName, paras);
+        setOutParas(args, paras, result);
+        return result.getResult();
+    }
+
+    /**
+     * 返回值为Future的方法以异步方式调用,返回值类型为Future的泛型参数
+     */
+    private Object doAsyncMethodCall(ServiceProxy proxy, InvokePlan plan, final Parameter[] paras, final Object[] args) throws Exception {
+        final InvokeFuture<Object> future = new InvokeFuture<Object>();
+        proxy.invokeAsync(null, plan.getLookup(), plan.getMethodName(), paras).addHandler(new IAsyncHandler<InvokeResult>() {
+            @Override
+            public void messageReceived(InvokeResult result) {
+                setOutParas(args, paras, result);
+                future.setResult(result.getResult());
+            }
 
+            @Override
+            public void exceptionCaught(Throwable e) {
+                future.setException(e);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * 按Out参数的顺序回填服务端返回的out值
+     */
+    private static void setOutParas(Object[] args, Parameter[] paras, InvokeResult result) {
         if (result != null && result.getOutPara() != null) {
-            for (int i = 0; i < outParas.size() && i < result.getOutPara().length; i++) {
-                Object op = args[outParas.get(i)];
-                if(op instanceof Out){
-                    ((Out)op).setOutPara(result.getOutPara()[i]);
+            Object[] outPara = result.getOutPara();
+            int k = 0;
+            for (int i = 0; i < paras.length && k < outPara.length; i++) {
+                if (paras[i].getParaType() == ParaType.Out) {
+                    ((Out) args[i]).setOutPara(outPara[k++]);
                 }
             }
         }
-        return result.getResult();
     }
 }
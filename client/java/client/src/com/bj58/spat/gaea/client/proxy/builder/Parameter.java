@@ -56,6 +56,21 @@ public class Parameter {
         this.setParaType(ptype);
         init(value, clazz, type);
     }
+
+    /**
+     * 复制InvokePlan中预先生成的类型描述,只替换参数值
+     */
+    Parameter(Parameter template, Object value) {
+        this.clazz = template.clazz;
+        this.type = template.type;
+        this.value = value;
+        this.paraType = template.paraType;
+        this.isGeneric = template.isGeneric;
+        this.simpleName = template.simpleName;
+        this.containerClass = template.containerClass;
+        this.itemClass = template.itemClass;
+        this.itemClass_ = template.itemClass_;
+    }
     
     /**
      * @param value null
@@ -84,7 +99,7 @@ public class Parameter {
             this.setIsGeneric(true);
 
             String sn = "";
-            if( value instanceof Out) {
+            if( value instanceof Out || paraType == ParaType.Out) {
                 sn = itemName.substring(itemName.lastIndexOf(".") + 1);
             } else {
                 sn = clazz.getCanonicalName();
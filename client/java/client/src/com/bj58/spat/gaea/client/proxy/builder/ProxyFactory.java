@@ -26,6 +26,9 @@ import java.net.MalformedURLException;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
+import com.bj58.spat.gaea.client.utility.logger.ILog;
+import com.bj58.spat.gaea.client.utility.logger.LogFactory;
+
 /**
  * ProxyFactory
  *
@@ -34,9 +37,16 @@ import java.util.concurrent.ConcurrentHashMap;
 public class ProxyFactory {
 
     private static Map cache = new ConcurrentHashMap();
+    private static final ILog logger = LogFactory.getLogger(ProxyFactory.class);
+    /**
+     * classpath中有javassist时生成客户端存根,否则使用动态代理
+     */
+    private static final boolean stubEnabled = isStubEnabled();
 
     /**
      * Factory for Proxy - creation.
+     * 接口中返回值为Future(如InvokeFuture&lt;News&gt;)的方法以异步方式调用,不阻塞调用线程
+     * classpath中有javassist时返回生成的存根类实例,生成失败或没有javassist时返回动态代理
      * @param type the class of type
      * @param strUrl request URL
      * @return
@@ -72,9 +82,29 @@ public class ProxyFactory {
             serviceName = splits[0];
             lookup = splits[1];
         }
-        InvocationHandler handler = new ProxyStandard(type, serviceName, lookup);
+        MethodCaller caller = new MethodCaller(serviceName, lookup);
+        //创建时生成每个方法的调用信息,调用时不再反射
+        caller.prepare(type);
+        if (stubEnabled) {
+            try {
+                return StubClassCreater.create(type, caller);
+            } catch (Throwable e) {
+                logger.warn("create stub for " + type.getName() + " error,use dynamic proxy:" + e);
+            }
+        }
+        InvocationHandler handler = new ProxyStandard(type, caller);
         return Proxy.newProxyInstance(Thread.currentThread().getContextClassLoader(),
                 new Class[]{type},
                 handler);
     }
+
+    private static boolean isStubEnabled() {
+        try {
+            Class.forName("javassist.ClassPool", false, ProxyFactory.class.getClassLoader());
+            return true;
+        } catch (Throwable e) {
+            logger.info("javassist not found,use dynamic proxy");
+            return false;
+        }
+    }
 }
\ No newline at end of file
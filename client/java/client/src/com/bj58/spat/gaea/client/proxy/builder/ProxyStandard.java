@@ -20,9 +20,6 @@
  */
 package com.bj58.spat.gaea.client.proxy.builder;
 
-import com.bj58.spat.gaea.client.utility.logger.ILog;
-import com.bj58.spat.gaea.client.utility.logger.LogFactory;
-
 import java.io.Serializable;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
@@ -36,7 +33,6 @@ public class ProxyStandard implements InvocationHandler, Serializable, IProxySta
 
     private Class<?> interfaceClass;
     private MethodCaller methodCaller;
-    private ILog logger = LogFactory.getLogger(ProxyStandard.class);
     
     /**
      * @param interfaceClass 接口类
@@ -47,6 +43,15 @@ public class ProxyStandard implements InvocationHandler, Serializable, IProxySta
         this.interfaceClass = interfaceClass;
         this.methodCaller = new MethodCaller(serviceName, lookup);
     }
+
+    /**
+     * @param interfaceClass 接口类
+     * @param methodCaller 已经生成调用信息的MethodCaller
+     */
+    ProxyStandard(Class<?> interfaceClass, MethodCaller methodCaller) {
+        this.interfaceClass = interfaceClass;
+        this.methodCaller = methodCaller;
+    }
     
     /**
      * args 参数
@@ -54,14 +59,6 @@ public class ProxyStandard implements InvocationHandler, Serializable, IProxySta
      */
     @Override
     public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
-        logger.info("method's name is :"+method.getName());
-        long start = System.currentTimeMillis();
-        Object obj = methodCaller.doMethodCall(args, method);
-        long end = System.currentTimeMillis();
-        long total = end - start;
-        if (total > 200) {
-            logger.warn("method:" + method.getName() + " invoke time :" + total);
-        }
-        return obj;
+        return methodCaller.doMethodCall(args, method);
     }
 }
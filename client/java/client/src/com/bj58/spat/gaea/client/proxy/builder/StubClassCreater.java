@@ -0,0 +1,134 @@
+/*
+ *  Copyright Beijing 58 Information Technology Co.,Ltd.
+ *
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package com.bj58.spat.gaea.client.proxy.builder;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javassist.ClassClassPath;
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtField;
+import javassist.CtMethod;
+import javassist.CtNewConstructor;
+import javassist.NotFoundException;
+
+import com.bj58.spat.gaea.client.utility.logger.ILog;
+import com.bj58.spat.gaea.client.utility.logger.LogFactory;
+
+/**
+ * StubClassCreater
+ * 用javassist为契约接口生成实现类,每个方法按序号直接调用MethodCaller.invoke,不经过InvocationHandler和Method查找
+ *
+ * @author Service Platform Architecture Team (spat@58.com)
+ */
+class StubClassCreater {
+
+    private static final ILog logger = LogFactory.getLogger(StubClassCreater.class);
+    private static final AtomicInteger seq = new AtomicInteger(0);
+
+    /**
+     * 生成存根实例
+     * @param type 契约接口
+     * @param caller 已经prepare过的MethodCaller
+     * @return 存根实例
+     * @throws Exception 生成失败
+     */
+    static Object create(Class<?> type, MethodCaller caller) throws Exception {
+        Method[] methods = getMethods(type);
+        Class<?> cls = createClass(type, methods);
+        caller.setStubMethods(methods);
+        return cls.getConstructor(MethodCaller.class).newInstance(caller);
+    }
+
+    /**
+     * 接口的所有方法,继承的接口中签名相同的方法只保留一个
+     */
+    private static Method[] getMethods(Class<?> type) {
+        List<Method> list = new ArrayList<Method>();
+        Set<String> signatures = new HashSet<String>();
+        for (Method m : type.getMethods()) {
+            if (signatures.add(m.getName() + Arrays.toString(m.getParameterTypes()))) {
+                list.add(m);
+            }
+        }
+        return list.toArray(new Method[list.size()]);
+    }
+
+    private static Class<?> createClass(Class<?> type, Method[] methods) throws Exception {
+        ClassPool pool = new ClassPool(true);
+        pool.insertClassPath(new ClassClassPath(type));
+        pool.insertClassPath(new ClassClassPath(MethodCaller.class));
+
+        String className = type.getName() + "GaeaStub" + seq.incrementAndGet();
+        String simpleName = className.substring(className.lastIndexOf('.') + 1);
+        logger.debug("create stub class:" + className);
+
+        CtClass ctClass = pool.makeClass(className);
+        ctClass.addInterface(pool.get(type.getName()));
+        ctClass.addField(CtField.make("private final " + MethodCaller.class.getName() + " caller;", ctClass));
+        ctClass.addConstructor(CtNewConstructor.make("public " + simpleName + "(" + MethodCaller.class.getName() + " caller) { this.caller = caller; }", ctClass));
+
+        for (int i = 0; i < methods.length; i++) {
+            Method m = methods[i];
+            CtMethod ctMethod = new CtMethod(getCtClass(pool, m.getReturnType()), m.getName(), getCtClasses(pool, m.getParameterTypes()), ctClass);
+            ctMethod.setExceptionTypes(getCtClasses(pool, m.getExceptionTypes()));
+            //$args为装箱后的参数数组,($r)转换为返回值类型(基本类型拆箱)
+            if (m.getReturnType() == void.class) {
+                ctMethod.setBody("{ caller.invoke(" + i + ", $args); }");
+            } else {
+                ctMethod.setBody("{ return ($r)caller.invoke(" + i + ", $args); }");
+            }
+            ctClass.addMethod(ctMethod);
+        }
+
+        Class<?> cls = ctClass.toClass(type.getClassLoader(), type.getProtectionDomain());
+        ctClass.detach();
+        return cls;
+    }
+
+    private static CtClass[] getCtClasses(ClassPool pool, Class<?>[] classes) throws NotFoundException {
+        CtClass[] ctClasses = new CtClass[classes.length];
+        for (int i = 0; i < classes.length; i++) {
+            ctClasses[i] = getCtClass(pool, classes[i]);
+        }
+        return ctClasses;
+    }
+
+    private static CtClass getCtClass(ClassPool pool, Class<?> cls) throws NotFoundException {
+        return pool.get(getName(cls));
+    }
+
+    /**
+     * ClassPool中的类名,数组为元素类型加[]
+     */
+    private static String getName(Class<?> cls) {
+        if (cls.isArray()) {
+            return getName(cls.getComponentType()) + "[]";
+        }
+        return cls.getName();
+    }
+}
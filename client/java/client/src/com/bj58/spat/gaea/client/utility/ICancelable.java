@@ -18,18 +18,20 @@
  *  specific language governing permissions and limitations
  *  under the License.
  */
-package com.bj58.spat.gaea.client.communication.socket;
-
-import java.io.ByteArrayOutputStream;
-import java.util.Arrays;
+package com.bj58.spat.gaea.client.utility;
 
 /**
- * CByteArrayOutputStream
+ * ICancelable
+ * 
+ * 已发出的异步请求,取消后不再等待响应,之后到达的响应被丢弃
+ * 
  * @author Service Platform Architecture Team (spat@58.com)
  */
-public class CByteArrayOutputStream extends ByteArrayOutputStream {
+public interface ICancelable {
 
-    public byte[] toByteArray(int index, int len) {
-        return Arrays.copyOfRange(buf, index, Math.min(index + len, size()));
-    }
+	/**
+	 * 取消请求
+	 * @return 请求已经完成时返回false
+	 */
+	public boolean cancel();
 }
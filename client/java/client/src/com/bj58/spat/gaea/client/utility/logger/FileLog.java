@@ -104,4 +104,14 @@ public class FileLog implements ILog {
     public void warn(String message, Throwable t) {
         logger.warn(GaeaConst.VERSION_FLAG + message, t);
     }
+
+    @Override
+    public boolean isDebugEnabled() {
+        return logger.isDebugEnabled();
+    }
+
+    @Override
+    public boolean isInfoEnabled() {
+        return logger.isInfoEnabled();
+    }
 }
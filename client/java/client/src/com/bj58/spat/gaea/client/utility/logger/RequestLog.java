@@ -0,0 +1,160 @@
+/*
+ *  Copyright Beijing 58 Information Technology Co.,Ltd.
+ *
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package com.bj58.spat.gaea.client.utility.logger;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * RequestLog
+ * 请求日志,按方法采样并限速,日志内容在后台线程中格式化和输出,队列满时丢弃
+ * 调用前先用sample判断是否需要记录,不需要时不产生任何字符串
+ *
+ * @author Service Platform Architecture Team (spat@58.com)
+ */
+public final class RequestLog {
+
+    private static final ILog logger = LogFactory.getLogger(RequestLog.class);
+    private static final int QUEUE_SIZE = 4096;
+    private static final BlockingQueue<Entry> queue = new ArrayBlockingQueue<Entry>(QUEUE_SIZE);
+    private static final ConcurrentHashMap<Object, Limiter> limiters = new ConcurrentHashMap<Object, Limiter>();
+    private static final AtomicLong dropped = new AtomicLong(0);
+    /**
+     * 每sampleRate个请求记录一个
+     */
+    private static volatile int sampleRate = 1;
+    /**
+     * 每个方法每秒最多记录的条数
+     */
+    private static volatile int maxPerSecond = 10;
+
+    static {
+        Thread t = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                write();
+            }
+        }, "Gaea Request Log Thread");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    private RequestLog() {
+    }
+
+    /**
+     * 判断这次请求是否需要记录:info级别开启、命中采样并且没有超过该方法的限速
+     * @param method 方法标识,toString为方法名
+     */
+    public static boolean sample(Object method) {
+        if (!logger.isInfoEnabled()) {
+            return false;
+        }
+        Limiter limiter = limiters.get(method);
+        if (limiter == null) {
+            limiter = new Limiter();
+            Limiter old = limiters.putIfAbsent(method, limiter);
+            if (old != null) {
+                limiter = old;
+            }
+        }
+        return limiter.tryAcquire();
+    }
+
+    /**
+     * 记录一次请求,detail在后台线程中调用toString,不能是之后会被修改的对象
+     * @param method 方法标识
+     * @param time 耗时(ms)
+     * @param detail 请求信息,可以为null
+     */
+    public static void log(Object method, long time, Object detail) {
+        if (!queue.offer(new Entry(method, time, detail))) {
+            dropped.incrementAndGet();
+        }
+    }
+
+    public static void setSampleRate(int rate) {
+        sampleRate = rate < 1 ? 1 : rate;
+    }
+
+    public static void setMaxPerSecond(int max) {
+        maxPerSecond = max;
+    }
+
+    private static void write() {
+        while (true) {
+            try {
+                Entry e = queue.take();
+                StringBuilder sb = new StringBuilder();
+                sb.append("REQUEST;;method::").append(e.method);
+                sb.append(";;time::").append(e.time).append("ms");
+                if (e.detail != null) {
+                    sb.append(";;").append(e.detail);
+                }
+                long d = dropped.getAndSet(0);
+                if (d > 0) {
+                    sb.append(";;dropped::").append(d);
+                }
+                logger.info(sb.toString());
+            } catch (InterruptedException ie) {
+                return;
+            } catch (Throwable ex) {
+                logger.error("write request log error", ex);
+            }
+        }
+    }
+
+    private static class Entry {
+        final Object method;
+        final long time;
+        final Object detail;
+
+        Entry(Object method, long time, Object detail) {
+            this.method = method;
+            this.time = time;
+            this.detail = detail;
+        }
+    }
+
+    /**
+     * 单个方法的采样计数和每秒限速
+     */
+    private static class Limiter {
+        private final AtomicLong seq = new AtomicLong(0);
+        private final AtomicLong second = new AtomicLong(0);
+        private final AtomicInteger count = new AtomicInteger(0);
+
+        boolean tryAcquire() {
+            if (seq.incrementAndGet() % sampleRate != 0) {
+                return false;
+            }
+            long now = System.currentTimeMillis() / 1000;
+            long s = second.get();
+            if (s != now && second.compareAndSet(s, now)) {
+                count.set(0);
+            }
+            return count.incrementAndGet() <= maxPerSecond;
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package com.bj58.spat.gaea.client.communication.socket;
+
+import java.io.ByteArrayInputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.w3c.dom.Node;
+
+import com.bj58.spat.gaea.client.configuration.commmunication.SocketPoolProfile;
+
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Service Platform Architecture Team (spat@58.com)
+ */
+public class CStackTest {
+
+    private ServerSocket server;
+    private final List<Socket> accepted = Collections.synchronizedList(new ArrayList<Socket>());
+    private final List<CSocket> sockets = new ArrayList<CSocket>();
+
+    @Before
+    public void setUp() throws Exception {
+        server = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+        Thread acceptor = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    while (true) {
+                        accepted.add(server.accept());
+                    }
+                } catch (Exception ex) {
+                }
+            }
+        };
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        for (CSocket socket : sockets) {
+            socket.disconnect();
+        }
+        server.close();
+        for (Socket socket : accepted) {
+            socket.close();
+        }
+    }
+
+    private CSocket[] connect(int count) throws Exception {
+        String xml = "<SocketPool bufferSize=\"4096\" minPoolSize=\"1\" maxPoolSize=\"5\" nagle=\"true\" autoShrink=\"00:00:20\""
+                + " sendTimeout=\"00:00:10\" receiveTimeout=\"00:00:10\" waitTimeout=\"00:00:01\"/>";
+        Node node = DocumentBuilderFactory.newInstance().newDocumentBuilder()
+                .parse(new ByteArrayInputStream(xml.getBytes("UTF-8"))).getDocumentElement();
+        SocketPoolProfile profile = new SocketPoolProfile(node);
+        InetSocketAddress endpoint = new InetSocketAddress("127.0.0.1", server.getLocalPort());
+        CSocket[] result = new CSocket[count];
+        for (int i = 0; i < count; i++) {
+            result[i] = new CSocket(endpoint, null, profile);
+            sockets.add(result[i]);
+        }
+        return result;
+    }
+
+    @Test
+    public void testEnqueueDequeue() throws Exception {
+        CSocket[] cs = connect(3);
+        CStack stack = new CStack(1000, 1);
+        for (CSocket socket : cs) {
+            stack.enqueue(socket);
+        }
+        assertEquals(3, stack.size());
+        //已断开的连接借出时被丢弃
+        cs[1].disconnect();
+        Set<CSocket> borrowed = new HashSet<CSocket>();
+        CSocket socket = null;
+        while ((socket = stack.dequeue()) != null) {
+            assertTrue(borrowed.add(socket));
+        }
+        assertEquals(2, borrowed.size());
+        assertFalse(borrowed.contains(cs[1]));
+        assertEquals(0, stack.size());
+    }
+
+    @Test
+    public void testDequeueWait() throws Exception {
+        final CSocket[] cs = connect(1);
+        final CStack stack = new CStack(1000, 1);
+        long begin = System.currentTimeMillis();
+        assertNull(stack.dequeue(50));
+        assertTrue(System.currentTimeMillis() - begin >= 40);
+
+        Thread returner = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException ex) {
+                }
+                stack.enqueue(cs[0]);
+            }
+        };
+        returner.start();
+        assertSame(cs[0], stack.dequeue(5000));
+        returner.join();
+    }
+
+    @Test
+    public void testReserve() throws Exception {
+        final CStack stack = new CStack(1000, 1);
+        final AtomicInteger reserved = new AtomicInteger(0);
+        Thread[] threads = new Thread[16];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < 100; j++) {
+                        if (stack.reserve(10)) {
+                            reserved.incrementAndGet();
+                        }
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(10, reserved.get());
+        assertEquals(10, stack.getTotal());
+        stack.unreserve();
+        assertTrue(stack.reserve(10));
+        assertFalse(stack.reserve(10));
+    }
+
+    @Test
+    public void testConcurrentBorrowAndReturn() throws Exception {
+        CSocket[] cs = connect(4);
+        final CStack stack = new CStack(1000, 1);
+        for (CSocket socket : cs) {
+            stack.enqueue(socket);
+        }
+        final Set<CSocket> inUse = Collections.newSetFromMap(new ConcurrentHashMap<CSocket, Boolean>());
+        final AtomicInteger errors = new AtomicInteger(0);
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        for (int j = 0; j < 5000; j++) {
+                            CSocket socket = stack.dequeue(5000);
+                            //同一个连接不能同时借给两个线程
+                            if (socket == null || !inUse.add(socket)) {
+                                errors.incrementAndGet();
+                                continue;
+                            }
+                            inUse.remove(socket);
+                            stack.enqueue(socket);
+                        }
+                    } catch (InterruptedException ex) {
+                        errors.incrementAndGet();
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(0, errors.get());
+        assertEquals(4, stack.size());
+    }
+}
@@ -0,0 +1,140 @@
+package com.bj58.spat.gaea.client.communication.socket;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.junit.Test;
+import org.w3c.dom.Node;
+
+import com.bj58.spat.gaea.client.GaeaConst;
+import com.bj58.spat.gaea.client.configuration.commmunication.SocketPoolProfile;
+import com.bj58.spat.gaea.protocol.utility.ByteConverter;
+import com.bj58.spat.gaea.protocol.utility.ProtocolConst;
+
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Service Platform Architecture Team (spat@58.com)
+ */
+public class FrameDecoderTest {
+
+    private static byte[] createFrame(int sessionId, int bodyLen) {
+        int totalLen = 14 + bodyLen;
+        byte[] frame = new byte[totalLen + ProtocolConst.P_END_TAG.length];
+        frame[0] = 1;
+        System.arraycopy(ByteConverter.intToBytesLittleEndian(totalLen), 0, frame, 1, 4);
+        System.arraycopy(ByteConverter.intToBytesLittleEndian(sessionId), 0, frame, 5, 4);
+        if (bodyLen >= ProtocolConst.P_END_TAG.length) {
+            //包体中出现与包尾相同的字节序列
+            System.arraycopy(ProtocolConst.P_END_TAG, 0, frame, 14, ProtocolConst.P_END_TAG.length);
+        }
+        System.arraycopy(ProtocolConst.P_END_TAG, 0, frame, totalLen, ProtocolConst.P_END_TAG.length);
+        return frame;
+    }
+
+    private static List<Integer> decodeAll(byte[] data, int bufferSize, int chunkSize) {
+        return decodeAll(new FrameDecoder(), data, bufferSize, chunkSize);
+    }
+
+    private static List<Integer> decodeAll(FrameDecoder decoder, byte[] data, int bufferSize, int chunkSize) {
+        ByteBuffer buffer = ByteBuffer.allocate(bufferSize);
+        List<Integer> sessionIds = new ArrayList<Integer>();
+        int offset = 0;
+        while (offset < data.length) {
+            int len = Math.min(Math.min(buffer.remaining(), chunkSize), data.length - offset);
+            buffer.put(data, offset, len);
+            offset += len;
+            buffer.flip();
+            byte[] pak = null;
+            while ((pak = decoder.decode(buffer)) != null) {
+                assertEquals(ByteConverter.bytesToIntLittleEndian(pak, 1), pak.length);
+                sessionIds.add(ByteConverter.bytesToIntLittleEndian(pak, 5));
+            }
+            buffer.compact();
+        }
+        return sessionIds;
+    }
+
+    @Test
+    public void testDecodeSplitAndLargeFrames() {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        int[] bodyLens = new int[] { 0, 20, 5000, 100, 30000 };
+        for (int i = 0; i < bodyLens.length; i++) {
+            byte[] frame = createFrame(i + 1, bodyLens[i]);
+            stream.write(frame, 0, frame.length);
+        }
+        byte[] data = stream.toByteArray();
+        for (int chunkSize : new int[] { 1, 7, 333, 1024 }) {
+            List<Integer> sessionIds = decodeAll(data, 1024, chunkSize);
+            assertEquals("[1, 2, 3, 4, 5]", sessionIds.toString());
+        }
+    }
+
+    @Test
+    public void testResyncAfterGarbage() {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        byte[] garbage = new byte[] { 7, 7, 7, 9, 11, 13, 17, 18 };
+        stream.write(garbage, 0, garbage.length);
+        byte[] frame = createFrame(99, 50);
+        stream.write(frame, 0, frame.length);
+        List<Integer> sessionIds = decodeAll(stream.toByteArray(), 1024, 16);
+        assertEquals("[99]", sessionIds.toString());
+    }
+
+    @Test
+    public void testRejectOversizedFrame() {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        //TotalLen接近Integer.MAX_VALUE的非法协议头
+        byte[] header = new byte[] { 1, 0, 0, 0, 0 };
+        System.arraycopy(ByteConverter.intToBytesLittleEndian(Integer.MAX_VALUE - 1), 0, header, 1, 4);
+        stream.write(header, 0, header.length);
+        stream.write(ProtocolConst.P_END_TAG, 0, ProtocolConst.P_END_TAG.length);
+        //超过接收上限的数据包
+        byte[] large = createFrame(1, 5000);
+        stream.write(large, 0, large.length);
+        byte[] frame = createFrame(2, 50);
+        stream.write(frame, 0, frame.length);
+        for (int chunkSize : new int[] { 3, 1024 }) {
+            final List<Integer> overflows = new ArrayList<Integer>();
+            FrameDecoder decoder = new FrameDecoder(2048, new FrameDecoder.OverflowHandler() {
+                @Override
+                public void frameOverflow(int sessionId, int totalLen) {
+                    overflows.add(sessionId);
+                }
+            });
+            List<Integer> sessionIds = decodeAll(decoder, stream.toByteArray(), 1024, chunkSize);
+            assertEquals("[2]", sessionIds.toString());
+            //超长数据包按sessionId通知,等待的请求不用等到超时
+            assertTrue(overflows.toString(), overflows.contains(1));
+        }
+    }
+
+    @Test
+    public void testReceiveLimitAboveSendLimit() throws Exception {
+        String xml = "<SocketPool bufferSize=\"4096\" minPoolSize=\"1\" maxPoolSize=\"5\" nagle=\"true\" autoShrink=\"00:00:20\""
+                + " sendTimeout=\"00:00:10\" receiveTimeout=\"00:00:10\" waitTimeout=\"00:00:01\" maxPakageSize=\"102400\"/>";
+        Node node = DocumentBuilderFactory.newInstance().newDocumentBuilder()
+                .parse(new ByteArrayInputStream(xml.getBytes("UTF-8"))).getDocumentElement();
+        SocketPoolProfile profile = new SocketPoolProfile(node);
+        assertTrue(profile.getMaxReceiveSize() >= GaeaConst.DEFAULT_MAX_RECEIVE_SIZE);
+
+        //大于发送上限maxPakageSize、小于接收上限的响应正常接收
+        final List<Integer> overflows = new ArrayList<Integer>();
+        FrameDecoder decoder = new FrameDecoder(profile.getMaxReceiveSize(), new FrameDecoder.OverflowHandler() {
+            @Override
+            public void frameOverflow(int sessionId, int totalLen) {
+                overflows.add(sessionId);
+            }
+        });
+        byte[] data = createFrame(3, 200 * 1024);
+        List<Integer> sessionIds = decodeAll(decoder, data, profile.getBufferSize(), 4096);
+        assertEquals("[3]", sessionIds.toString());
+        assertTrue(overflows.isEmpty());
+    }
+}
@@ -0,0 +1,146 @@
+package com.bj58.spat.gaea.client.communication.socket;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.lang.reflect.Field;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.bj58.spat.gaea.client.GaeaConst;
+import com.bj58.spat.gaea.client.configuration.ServiceConfig;
+import com.bj58.spat.gaea.client.loadbalance.Server;
+
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Service Platform Architecture Team (spat@58.com)
+ */
+public class ScoketPoolTest {
+
+    private ServerSocket server;
+    private final List<Socket> accepted = Collections.synchronizedList(new ArrayList<Socket>());
+    private File configFile;
+    private String configPath;
+    private ScoketPool pool;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+        Thread acceptor = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    while (true) {
+                        accepted.add(server.accept());
+                    }
+                } catch (Exception ex) {
+                }
+            }
+        };
+        acceptor.setDaemon(true);
+        acceptor.start();
+
+        String xml = "<?xml version=\"1.0\" encoding=\"utf-8\" ?><GAEA><Service name=\"pooltest\" id=\"3\"><Commmunication>"
+                + "<SocketPool bufferSize=\"4096\" minPoolSize=\"1\" maxPoolSize=\"5\" nagle=\"true\" autoShrink=\"00:00:20\""
+                + " sendTimeout=\"00:00:10\" receiveTimeout=\"00:00:10\" waitTimeout=\"00:00:01\" multiplex=\"2\"/>"
+                + "<Protocol serialize=\"GAEA\" encoder=\"UTF-8\" compressType=\"UnCompress\"/></Commmunication>"
+                + "<Loadbalance><Server deadTimeout=\"00:00:10\"><add name=\"pooltest\" host=\"127.0.0.1\" port=\"" + server.getLocalPort() + "\"/>"
+                + "</Server></Loadbalance></Service></GAEA>";
+        configFile = File.createTempFile("gaea", ".config");
+        FileOutputStream out = new FileOutputStream(configFile);
+        out.write(xml.getBytes("UTF-8"));
+        out.close();
+        configPath = GaeaConst.CONFIG_PATH;
+        GaeaConst.CONFIG_PATH = configFile.getAbsolutePath();
+
+        ServiceConfig config = ServiceConfig.GetConfig("pooltest");
+        Server s = new Server(config.getServers().get(0)) {
+        };
+        pool = new ScoketPool(s, config);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        GaeaConst.CONFIG_PATH = configPath;
+        pool.destroy();
+        server.close();
+        for (Socket socket : accepted) {
+            socket.close();
+        }
+        configFile.delete();
+    }
+
+    private List<CSocket> registered() throws Exception {
+        Field queue = ScoketPool.class.getDeclaredField("queue");
+        queue.setAccessible(true);
+        CStack stack = (CStack) queue.get(pool);
+        assertEquals(stack.getAllSocket().size(), stack.getTotal());
+        return stack.getAllSocket();
+    }
+
+    @Test
+    public void testConcurrentSharedConnect() throws Exception {
+        final Set<CSocket> sockets = Collections.synchronizedSet(new HashSet<CSocket>());
+        final AtomicInteger errors = new AtomicInteger(0);
+        final CountDownLatch start = new CountDownLatch(1);
+        Thread[] threads = new Thread[16];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        for (int j = 0; j < 100; j++) {
+                            sockets.add(pool.getSocket());
+                        }
+                    } catch (Throwable ex) {
+                        errors.incrementAndGet();
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(0, errors.get());
+        //每个槽位只建立一个连接
+        assertEquals(2, sockets.size());
+        assertEquals(2, registered().size());
+    }
+
+    @Test
+    public void testReplaceDeadSharedSocket() throws Throwable {
+        CSocket first = pool.getSocket();
+        CSocket second = pool.getSocket();
+        assertNotSame(first, second);
+        first.disconnect();
+        assertFalse(first.connecting());
+
+        //断开的连接被替换,旧连接从连接池中注销
+        Set<CSocket> sockets = new HashSet<CSocket>();
+        for (int i = 0; i < 4; i++) {
+            CSocket socket = pool.getSocket();
+            assertTrue(socket.connecting());
+            sockets.add(socket);
+        }
+        assertEquals(2, sockets.size());
+        assertTrue(sockets.contains(second));
+        assertFalse(sockets.contains(first));
+        assertEquals(sockets, new HashSet<CSocket>(registered()));
+    }
+}
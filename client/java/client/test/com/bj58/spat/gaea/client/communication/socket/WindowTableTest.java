@@ -0,0 +1,153 @@
+package com.bj58.spat.gaea.client.communication.socket;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.bj58.spat.gaea.protocol.utility.ByteConverter;
+
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Service Platform Architecture Team (spat@58.com)
+ */
+public class WindowTableTest {
+
+    @Test
+    public void testRegisterGetFree() throws Exception {
+        WindowTable table = new WindowTable(3);
+        assertEquals(4, table.capacity());
+        //1和5落在同一个槽位,需要线性探测
+        WindowData wd1 = table.register(1, null);
+        WindowData wd5 = table.register(5, null);
+        table.register(2, null);
+        table.register(3, null);
+        assertEquals(4, table.size());
+        try {
+            table.register(4, null);
+            fail("window should be full");
+        } catch (Exception ex) {
+        }
+        assertSame(wd1, table.get(1));
+        assertSame(wd5, table.get(5));
+        assertNull(table.get(9));
+
+        table.free(wd1);
+        assertNull(table.get(1));
+        assertSame(wd5, table.get(5));
+        //释放的槽位被复用
+        assertSame(wd1, table.register(9, null));
+        assertEquals(9, table.get(9).getSessionId());
+        assertEquals(4, table.size());
+    }
+
+    @Test
+    public void testAwaitTimeout() throws Exception {
+        WindowTable table = new WindowTable(4);
+        WindowData wd = table.register(1, null);
+        assertFalse(wd.await(10));
+        //超时后接收线程不能再完成该请求
+        assertFalse(wd.disarm(1));
+        assertNull(wd.getData());
+    }
+
+    @Test
+    public void testInterruptWhileWaiting() throws Exception {
+        WindowTable table = new WindowTable(4);
+        WindowData wd = table.register(1, null);
+        Thread.currentThread().interrupt();
+        try {
+            wd.await(1000);
+            fail("await should be interrupted");
+        } catch (InterruptedException ex) {
+        }
+        assertFalse(wd.disarm(1));
+    }
+
+    @Test
+    public void testInterruptAfterCompletionWon() throws Exception {
+        WindowTable table = new WindowTable(4);
+        final WindowData wd = table.register(1, null);
+        //接收线程已抢到完成权,但还未写入结果
+        assertTrue(wd.disarm(1));
+        Thread completer = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException ex) {
+                }
+                wd.complete(new byte[] { 1 }, null);
+            }
+        };
+        completer.start();
+        Thread.currentThread().interrupt();
+        try {
+            assertTrue(wd.await(1000));
+            assertEquals(1, wd.getData()[0]);
+            assertTrue("interrupt status should be restored", Thread.currentThread().isInterrupted());
+        } finally {
+            Thread.interrupted();
+            completer.join();
+        }
+    }
+
+    @Test
+    public void testConcurrentRequests() throws Exception {
+        final WindowTable table = new WindowTable(16);
+        final BlockingQueue<Integer> sent = new LinkedBlockingQueue<Integer>();
+        final AtomicInteger sessionId = new AtomicInteger(0);
+        final AtomicInteger errors = new AtomicInteger(0);
+        final int threads = 8;
+        final int requests = 2000;
+
+        Thread receiver = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    for (int i = 0; i < threads * requests; i++) {
+                        int id = sent.take();
+                        WindowData wd = table.get(id);
+                        if (wd != null && wd.disarm(id)) {
+                            wd.complete(ByteConverter.intToBytesLittleEndian(id), null);
+                        }
+                    }
+                } catch (InterruptedException ex) {
+                }
+            }
+        };
+        receiver.start();
+
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            workers[t] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        for (int i = 0; i < requests; i++) {
+                            int id = sessionId.incrementAndGet();
+                            WindowData wd = table.register(id, null);
+                            sent.put(id);
+                            if (!wd.await(5000) || ByteConverter.bytesToIntLittleEndian(wd.getData(), 0) != id) {
+                                errors.incrementAndGet();
+                            }
+                            table.free(wd);
+                        }
+                    } catch (Exception ex) {
+                        errors.incrementAndGet();
+                    }
+                }
+            };
+            workers[t].start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        receiver.join();
+        assertEquals(0, errors.get());
+        assertEquals(0, table.size());
+    }
+}
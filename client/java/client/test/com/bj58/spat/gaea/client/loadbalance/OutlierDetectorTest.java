@@ -0,0 +1,140 @@
+package com.bj58.spat.gaea.client.loadbalance;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+
+import com.bj58.spat.gaea.client.GaeaConst;
+import com.bj58.spat.gaea.client.configuration.loadbalance.ServerProfile;
+import com.bj58.spat.gaea.client.loadbalance.component.ServerState;
+import com.bj58.spat.gaea.client.loadbalance.component.ServerStats;
+
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Service Platform Architecture Team (spat@58.com)
+ */
+public class OutlierDetectorTest {
+
+    private static final long MS = 1000000L;
+
+    private static List<Server> createServers(int count) throws Exception {
+        List<Server> servers = new ArrayList<Server>();
+        for (int i = 0; i < count; i++) {
+            String xml = "<Server deadTimeout=\"00:00:30\"><add name=\"s" + i + "\" host=\"127.0.0.1\" port=\"10000\"/></Server>";
+            Document doc = DocumentBuilderFactory.newInstance().newDocumentBuilder()
+                    .parse(new ByteArrayInputStream(xml.getBytes("UTF-8")));
+            servers.add(new Server(new ServerProfile(doc.getDocumentElement().getFirstChild())));
+        }
+        return servers;
+    }
+
+    /**
+     * 模拟一个统计周期内的请求
+     */
+    private static void traffic(Server server, int requests, long latencyMs, int errors) {
+        ServerStats stats = server.getStats();
+        for (int i = 0; i < requests; i++) {
+            stats.requestStart();
+            if (i < errors) {
+                stats.recordError();
+            }
+            stats.recordLatency(latencyMs * MS);
+            stats.requestEnd();
+        }
+    }
+
+    private static void normalTraffic(List<Server> servers) {
+        for (Server server : servers) {
+            traffic(server, 30, 5, 0);
+        }
+    }
+
+    @Test
+    public void testSingleSlowRequestDoesNotEject() throws Exception {
+        List<Server> servers = createServers(4);
+        OutlierDetector detector = new OutlierDetector(servers);
+        normalTraffic(servers);
+        //一次超时只影响EWMA峰值,不影响周期内的延迟中位数
+        servers.get(0).getStats().recordTimeout(3000 * MS);
+        detector.evaluate();
+        for (Server server : servers) {
+            assertEquals(ServerState.Normal, server.getState());
+        }
+    }
+
+    @Test
+    public void testMinRequests() throws Exception {
+        List<Server> servers = createServers(4);
+        OutlierDetector detector = new OutlierDetector(servers);
+        normalTraffic(servers);
+        detector.evaluate();
+        //周期内请求数不足,即使全部失败也不摘除
+        normalTraffic(servers.subList(1, servers.size()));
+        traffic(servers.get(0), GaeaConst.EJECTION_MIN_REQUESTS - 1, 2000, GaeaConst.EJECTION_MIN_REQUESTS - 1);
+        detector.evaluate();
+        assertEquals(ServerState.Normal, servers.get(0).getState());
+    }
+
+    @Test
+    public void testEjectBackoffRecover() throws Exception {
+        List<Server> servers = createServers(4);
+        Server bad = servers.get(0);
+        OutlierDetector detector = new OutlierDetector(servers);
+
+        //持续失败被摘除
+        normalTraffic(servers);
+        traffic(bad, 30, 5, 20);
+        detector.evaluate();
+        assertEquals(ServerState.Ejected, bad.getState());
+        long first = bad.getEjectedUntil() - System.currentTimeMillis();
+        assertTrue(first <= GaeaConst.EJECTION_BASE_TIME && first > GaeaConst.EJECTION_BASE_TIME - 1000);
+
+        //恢复后仍然很慢,摘除时间加倍
+        bad.readmit();
+        assertEquals(ServerState.Normal, bad.getState());
+        assertTrue(bad.getWarmupFactor() < 1);
+        normalTraffic(servers.subList(1, servers.size()));
+        traffic(bad, 30, 1000, 0);
+        detector.evaluate();
+        assertEquals(ServerState.Ejected, bad.getState());
+        long second = bad.getEjectedUntil() - System.currentTimeMillis();
+        assertTrue(second > first + GaeaConst.EJECTION_BASE_TIME - 1000);
+
+        //恢复后正常,保持Normal并逐步减少摘除次数
+        bad.readmit();
+        normalTraffic(servers);
+        detector.evaluate();
+        assertEquals(ServerState.Normal, bad.getState());
+        normalTraffic(servers);
+        detector.evaluate();
+        traffic(bad, 30, 5, 30);
+        detector.evaluate();
+        assertEquals(ServerState.Ejected, bad.getState());
+        long third = bad.getEjectedUntil() - System.currentTimeMillis();
+        assertTrue(third <= GaeaConst.EJECTION_BASE_TIME);
+    }
+
+    @Test
+    public void testMaxEjectPercent() throws Exception {
+        List<Server> servers = createServers(4);
+        OutlierDetector detector = new OutlierDetector(servers);
+        for (Server server : servers) {
+            traffic(server, 30, 5, 30);
+        }
+        detector.evaluate();
+        int ejected = 0;
+        for (Server server : servers) {
+            if (server.getState() == ServerState.Ejected) {
+                ejected++;
+            }
+        }
+        assertEquals((int) (servers.size() * GaeaConst.EJECTION_MAX_PERCENT), ejected);
+    }
+}
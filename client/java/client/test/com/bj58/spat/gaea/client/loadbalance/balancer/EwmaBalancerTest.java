@@ -0,0 +1,89 @@
+package com.bj58.spat.gaea.client.loadbalance.balancer;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+
+import com.bj58.spat.gaea.client.configuration.loadbalance.ServerProfile;
+import com.bj58.spat.gaea.client.loadbalance.Server;
+
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Service Platform Architecture Team (spat@58.com)
+ */
+public class EwmaBalancerTest {
+
+    private static final long MS = 1000000L;
+
+    private static Server createServer(String name) throws Exception {
+        String xml = "<Server deadTimeout=\"00:00:30\"><add name=\"" + name + "\" host=\"127.0.0.1\" port=\"10000\"/></Server>";
+        Document doc = DocumentBuilderFactory.newInstance().newDocumentBuilder()
+                .parse(new ByteArrayInputStream(xml.getBytes("UTF-8")));
+        return new Server(new ServerProfile(doc.getDocumentElement().getFirstChild())) {
+        };
+    }
+
+    private static void inFlight(Server server, int count) {
+        for (int i = 0; i < count; i++) {
+            server.getStats().requestStart();
+        }
+    }
+
+    @Test
+    public void testUnsampledServerUsesMedianLatency() throws Exception {
+        Server fresh = createServer("fresh");
+        Server a = createServer("a");
+        Server b = createServer("b");
+        a.getStats().recordLatency(10 * MS);
+        b.getStats().recordLatency(12 * MS);
+        //还没有样本但已有较多请求在途的服务器,代价不能为0
+        inFlight(fresh, 5);
+        List<Server> servers = new ArrayList<Server>();
+        servers.add(fresh);
+        servers.add(a);
+        servers.add(b);
+        EwmaBalancer balancer = new EwmaBalancer();
+        for (int i = 0; i < 10; i++) {
+            assertNotSame(fresh, balancer.select(servers));
+        }
+    }
+
+    @Test
+    public void testUnsampledIdleServerGetsTraffic() throws Exception {
+        Server fresh = createServer("fresh");
+        Server a = createServer("a");
+        a.getStats().recordLatency(10 * MS);
+        inFlight(a, 1);
+        List<Server> servers = new ArrayList<Server>();
+        servers.add(a);
+        servers.add(fresh);
+        assertSame(fresh, new EwmaBalancer().select(servers));
+    }
+
+    @Test
+    public void testSpikedServerAvoided() throws Exception {
+        Server slow = createServer("slow");
+        Server a = createServer("a");
+        Server b = createServer("b");
+        slow.getStats().recordTimeout(3000 * MS);
+        a.getStats().recordLatency(10 * MS);
+        b.getStats().recordLatency(10 * MS);
+        inFlight(a, 3);
+        inFlight(b, 3);
+        List<Server> servers = new ArrayList<Server>();
+        servers.add(slow);
+        servers.add(a);
+        servers.add(b);
+        EwmaBalancer balancer = new EwmaBalancer();
+        for (int i = 0; i < 10; i++) {
+            assertNotSame(slow, balancer.select(servers));
+        }
+    }
+}
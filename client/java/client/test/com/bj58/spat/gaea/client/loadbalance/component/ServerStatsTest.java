@@ -0,0 +1,73 @@
+package com.bj58.spat.gaea.client.loadbalance.component;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Service Platform Architecture Team (spat@58.com)
+ */
+public class ServerStatsTest {
+
+    private static final long MS = 1000000L;
+
+    @Test
+    public void testNoSampleUsesPrior() {
+        ServerStats stats = new ServerStats();
+        assertFalse(stats.hasLatency());
+        assertEquals(0, stats.getLatency(), 0);
+        assertEquals(25, stats.getLatency(25), 0);
+    }
+
+    @Test
+    public void testPeakTakenImmediately() {
+        ServerStats stats = new ServerStats();
+        long now = System.nanoTime();
+        stats.recordLatency(10 * MS, now);
+        stats.recordLatency(500 * MS, now + MS);
+        assertEquals(500, stats.getLatency(10, now + MS), 0.001);
+    }
+
+    @Test
+    public void testSpikeDecaysTowardPrior() {
+        ServerStats stats = new ServerStats();
+        long now = System.nanoTime();
+        //一次3秒的超时
+        stats.recordLatency(3000 * MS, now);
+        assertEquals(3000, stats.getLatency(10, now), 0.001);
+        double oneSecond = stats.getLatency(10, now + 1000 * MS);
+        assertTrue(oneSecond < 3000 && oneSecond > 10);
+        //没有新样本,几秒后回到与其它服务器相同的水平
+        assertEquals(10, stats.getLatency(10, now + 10000 * MS), 1);
+        //存储的EWMA本身不变
+        assertEquals(3000, stats.getLatency(), 0.001);
+    }
+
+    @Test
+    public void testRecentPercentile() {
+        ServerStats stats = new ServerStats();
+        long now = System.nanoTime();
+        assertEquals(-1, stats.getRecentPercentile(0.95, now));
+        for (int i = 1; i <= 100; i++) {
+            stats.recordLatency(i * 3 * MS, now);
+        }
+        long p95 = stats.getRecentPercentile(0.95, now);
+        assertTrue("p95:" + p95, p95 >= 285 && p95 <= 285 * 1.1);
+
+        //延迟变化后,两个窗口内只反映新的延迟
+        now += 10001 * MS;
+        for (int i = 0; i < 100; i++) {
+            stats.recordLatency(20 * MS, now);
+        }
+        assertTrue(stats.getRecentPercentile(0.95, now) > 250);
+        now += 10001 * MS;
+        for (int i = 0; i < 100; i++) {
+            stats.recordLatency(20 * MS, now);
+        }
+        long p = stats.getRecentPercentile(0.95, now);
+        assertTrue("p95:" + p, p >= 20 && p <= 22);
+        //长时间没有样本
+        assertEquals(-1, stats.getRecentPercentile(0.95, now + 30000 * MS));
+    }
+}
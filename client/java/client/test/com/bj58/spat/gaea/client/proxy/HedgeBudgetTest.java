@@ -0,0 +1,71 @@
+package com.bj58.spat.gaea.client.proxy;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Service Platform Architecture Team (spat@58.com)
+ */
+public class HedgeBudgetTest {
+
+    private static int hedges(HedgeBudget budget, long now, int calls) {
+        int sent = 0;
+        for (int i = 0; i < calls; i++) {
+            budget.deposit(now);
+            if (budget.tryAcquire(now)) {
+                sent++;
+            }
+        }
+        return sent;
+    }
+
+    @Test
+    public void testPercentOfCalls() {
+        HedgeBudget budget = new HedgeBudget(10000, 10);
+        long now = 1000000;
+        assertEquals(10, hedges(budget, now, 100));
+        assertFalse(budget.tryAcquire(now));
+    }
+
+    @Test
+    public void testNoSavingWhileQuiet() {
+        HedgeBudget budget = new HedgeBudget(10000, 10);
+        long now = 1000000;
+        //空闲时段的大量调用没有发出对冲请求
+        for (int i = 0; i < 100000; i++) {
+            budget.deposit(now);
+        }
+        //窗口过去后,故障开始时的对冲请求仍只占当前调用的10%
+        now += 20000;
+        int sent = 0;
+        for (int i = 0; i < 100; i++) {
+            budget.deposit(now);
+            while (budget.tryAcquire(now)) {
+                sent++;
+            }
+        }
+        assertEquals(10, sent);
+    }
+
+    @Test
+    public void testSlidingWindow() {
+        HedgeBudget budget = new HedgeBudget(10000, 10);
+        long now = 1000000;
+        assertEquals(10, hedges(budget, now, 100));
+        //半个窗口后旧的调用和对冲请求仍在统计中
+        now += 5000;
+        assertEquals(10, hedges(budget, now, 100));
+        //第一批滑出窗口后,只剩第二批
+        now += 6000;
+        for (int i = 0; i < 100; i++) {
+            budget.deposit(now);
+        }
+        int sent = 0;
+        while (budget.tryAcquire(now)) {
+            sent++;
+        }
+        assertEquals(10, sent);
+    }
+}
@@ -52,6 +52,12 @@ public class RequestProtocol {
 	 */
 	@GaeaMember
 	private List<KeyValuePair> paraKVList;
+	/**
+	 * 调用方剩余的等待时间(ms),0为不限制
+	 * #开头的字段排在最后,旧版本客户端不发送该字段
+	 */
+	@GaeaMember(name = "#timeout")
+	private int timeout;
 
 	public RequestProtocol() {
 	}
@@ -86,4 +92,12 @@ public class RequestProtocol {
 	public void setParaKVList(List<KeyValuePair> paraKVList) {
 		this.paraKVList = paraKVList;
 	}
+
+	public int getTimeout() {
+		return timeout;
+	}
+
+	public void setTimeout(int timeout) {
+		this.timeout = timeout;
+	}
 }
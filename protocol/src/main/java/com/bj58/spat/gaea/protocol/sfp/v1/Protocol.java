@@ -20,6 +20,8 @@
  */
 package com.bj58.spat.gaea.protocol.sfp.v1;
 
+import java.nio.ByteBuffer;
+
 import com.bj58.spat.gaea.protocol.compress.CompressBase;
 import com.bj58.spat.gaea.protocol.serializer.SerializeBase;
 import com.bj58.spat.gaea.protocol.sfp.enumeration.CompressType;
@@ -27,6 +29,7 @@ import com.bj58.spat.gaea.protocol.sfp.enumeration.PlatformType;
 import com.bj58.spat.gaea.protocol.sfp.enumeration.SDPType;
 import com.bj58.spat.gaea.protocol.sfp.enumeration.SerializeType;
 import com.bj58.spat.gaea.protocol.utility.ByteConverter;
+import com.bj58.spat.gaea.protocol.utility.ProtocolConst;
 import com.bj58.spat.gaea.secure.DESCoderHelper;
 
 /**
@@ -355,7 +358,31 @@ public class Protocol {
      * @throws Exception
      */
     public byte[] toBytes(boolean rights, byte [] desKey) throws Exception{
-        int startIndex = 0;
+        byte[] sdpData = toBody(rights, desKey);
+        byte[] data = new byte[this.getTotalLen()];
+        writeHead(data);
+        System.arraycopy(sdpData, 0, data, HEAD_STACK_LENGTH, sdpData.length);
+        return data;
+    }
+
+    /**
+     * 按消息头、消息体、分界符分别返回,供聚集写(gathering write)直接发送,不再拷贝到同一数组
+     * @param rights 是否启用权限认证
+     * @param desKey DES密钥
+     * @return {消息头, 消息体, 分界符}
+     * @throws Exception
+     */
+    public ByteBuffer[] toBuffers(boolean rights, byte [] desKey) throws Exception{
+        byte[] sdpData = toBody(rights, desKey);
+        byte[] head = new byte[HEAD_STACK_LENGTH];
+        writeHead(head);
+        return new ByteBuffer[] { ByteBuffer.wrap(head), ByteBuffer.wrap(sdpData), ByteBuffer.wrap(ProtocolConst.P_END_TAG) };
+    }
+
+    /**
+     * 序列化、加密、压缩消息体,并设置协议总长度
+     */
+    private byte[] toBody(boolean rights, byte [] desKey) throws Exception{
         SerializeBase serialize = SerializeBase.getInstance(this.getSerializeType());
         CompressBase compress = CompressBase.getInstance(this.getCompressType());
         
@@ -368,10 +395,12 @@ public class Protocol {
         }
         
         sdpData = compress.zip(sdpData);
-        int protocolLen = HEAD_STACK_LENGTH + sdpData.length;
-        this.setTotalLen(protocolLen);
-        
-        byte[] data = new byte[protocolLen];
+        this.setTotalLen(HEAD_STACK_LENGTH + sdpData.length);
+        return sdpData;
+    }
+
+    private void writeHead(byte[] data) {
+        int startIndex = 0;
         data[0] = Protocol.VERSION;
 
         startIndex += SFPStruct.Version;
@@ -394,10 +423,5 @@ public class Protocol {
 
         startIndex += SFPStruct.SerializeType;
         data[startIndex] = (byte) this.getPlatformType().getNum();
-
-        startIndex += SFPStruct.Platform;
-        System.arraycopy(sdpData, 0, data, startIndex, protocolLen - startIndex);
-
-        return data;
     }
 }
\ No newline at end of file
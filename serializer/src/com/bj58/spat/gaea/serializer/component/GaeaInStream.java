@@ -20,6 +20,7 @@
  */
 package com.bj58.spat.gaea.serializer.component;
 
+import java.util.Arrays;
 import java.util.Map;
 import java.util.HashMap;
 import java.io.IOException;
@@ -27,7 +28,6 @@ import java.nio.charset.Charset;
 import java.io.ByteArrayInputStream;
 
 import com.bj58.spat.gaea.serializer.component.exception.StreamException;
-import com.bj58.spat.gaea.serializer.component.helper.ByteHelper;
 
 /**
  * GaeaInStream
@@ -40,8 +40,14 @@ public class GaeaInStream extends ByteArrayInputStream {
     public Charset Encoder = Charset.forName("UTF-8");
     /**
      * 缓存了hashcode和引用之间的关系
+     * 发送方从1001开始连续分配引用ID,按下标存放在_Refs中;_Refs只在下标紧邻当前长度时按倍数扩容,
+     * 其他ID(包括不连续的大ID)存放在_RefPool中,避免一个异常的ID分配大数组
      */
-    private Map<Integer, Object> _RefPool = new HashMap<Integer, Object>();
+    private Object[] _Refs;
+    private Map<Integer, Object> _RefPool;
+    private static final int FIRST_REF_ID = 1001;
+    private static final int INITIAL_REFS = 16;
+    private static final int MAX_INDEXED_REFS = 1 << 20;
 
     public GaeaInStream(byte[] buffer) {
         super(buffer);
@@ -52,7 +58,8 @@ public class GaeaInStream extends ByteArrayInputStream {
     }
 
     public void SafeRead(byte[] buffer) throws StreamException, IOException {
-        if (this.read(buffer) != buffer.length) {
+        //流末尾的空数组读取0字节,read在没有剩余数据时返回-1
+        if (buffer.length > 0 && this.read(buffer) != buffer.length) {
             throw new StreamException();
         }
     }
@@ -61,40 +68,180 @@ public class GaeaInStream extends ByteArrayInputStream {
         if (hashcode == 0) {
             return null;
         }
-        return _RefPool.get(hashcode);
+        int index = hashcode - FIRST_REF_ID;
+        if (_Refs != null && index >= 0 && index < _Refs.length && _Refs[index] != null) {
+            return _Refs[index];
+        }
+        return _RefPool == null ? null : _RefPool.get(hashcode);
     }
 
     public void SetRef(int hashcode, Object obj) {
+        int index = hashcode - FIRST_REF_ID;
+        int limit = _Refs == null ? INITIAL_REFS : Math.min(_Refs.length << 1, MAX_INDEXED_REFS);
+        if (index >= 0 && index < limit) {
+            if (_Refs == null) {
+                _Refs = new Object[INITIAL_REFS];
+            } else if (index >= _Refs.length) {
+                _Refs = Arrays.copyOf(_Refs, _Refs.length << 1);
+            }
+            _Refs[index] = obj;
+            return;
+        }
+        if (_RefPool == null) {
+            _RefPool = new HashMap<Integer, Object>();
+        }
         _RefPool.put(hashcode, obj);
     }
 
-    public short ReadInt16() throws Exception {
-        byte[] buffer = new byte[2];
-        if (this.read(buffer) != 2) {
+    /*
+     * 以下读取方法直接按下标从缓冲区解码,不经过父类的同步方法,也不分配临时数组
+     * 每次反序列化只有一个线程使用本流,不需要同步
+     */
+    @Override
+    public int read() {
+        return (pos < count) ? (buf[pos++] & 0xff) : -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+        if (b == null) {
+            throw new NullPointerException();
+        } else if (off < 0 || len < 0 || len > b.length - off) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (pos >= count) {
+            return -1;
+        }
+        int avail = count - pos;
+        if (len > avail) {
+            len = avail;
+        }
+        if (len <= 0) {
+            return 0;
+        }
+        System.arraycopy(buf, pos, b, off, len);
+        pos += len;
+        return len;
+    }
+
+    @Override
+    public int available() {
+        return count - pos;
+    }
+
+    @Override
+    public long skip(long n) {
+        long k = count - pos;
+        if (n < k) {
+            k = n < 0 ? 0 : n;
+        }
+        pos += k;
+        return k;
+    }
+
+    public byte ReadByte() throws StreamException {
+        if (pos >= count) {
             throw new StreamException();
         }
-        return ByteHelper.ToInt16(buffer);
+        return buf[pos++];
+    }
+
+    public short ReadInt16() throws StreamException {
+        int p = advance(2);
+        return (short) ((buf[p] & 0xff) | (buf[p + 1] << 8));
     }
 
     /**
      * 读取4个字节并转为int类型。
      * 转换为int的字节顺序为：byte[3]byte[2]byte[1]byte[0]
      * @return
-     * @throws Exception
+     * @throws StreamException
      */
-    public int ReadInt32() throws Exception {
-        byte[] buffer = new byte[4];
-        if (this.read(buffer) != 4) {
-            throw new StreamException();
+    public int ReadInt32() throws StreamException {
+        return getInt32(advance(4));
+    }
+
+    public long ReadInt64() throws StreamException {
+        return getInt64(advance(8));
+    }
+
+    /**
+     * 批量读取基本类型数组,填满values,数据不足时抛出异常
+     */
+    public void ReadInt16(short[] values) throws StreamException {
+        int p = advance(values.length << 1);
+        for (int i = 0; i < values.length; i++, p += 2) {
+            values[i] = (short) ((buf[p] & 0xff) | (buf[p + 1] << 8));
         }
-        return ByteHelper.ToInt32(buffer);
     }
 
-    public long ReadInt64() throws Exception {
-        byte[] buffer = new byte[8];
-        if (this.read(buffer) != 8) {
+    public void ReadInt32(int[] values) throws StreamException {
+        int p = advance(values.length << 2);
+        for (int i = 0; i < values.length; i++, p += 4) {
+            values[i] = getInt32(p);
+        }
+    }
+
+    public void ReadInt64(long[] values) throws StreamException {
+        int p = advance(values.length << 3);
+        for (int i = 0; i < values.length; i++, p += 8) {
+            values[i] = getInt64(p);
+        }
+    }
+
+    public void ReadFloat(float[] values) throws StreamException {
+        int p = advance(values.length << 2);
+        for (int i = 0; i < values.length; i++, p += 4) {
+            values[i] = Float.intBitsToFloat(getInt32(p));
+        }
+    }
+
+    public void ReadDouble(double[] values) throws StreamException {
+        int p = advance(values.length << 3);
+        for (int i = 0; i < values.length; i++, p += 8) {
+            values[i] = Double.longBitsToDouble(getInt64(p));
+        }
+    }
+
+    /**
+     * 按Encoder直接从缓冲区解码len个字节,不复制到中间数组
+     */
+    public String ReadString(int len) throws StreamException {
+        int p = advance(len);
+        return new String(buf, p, len, Encoder);
+    }
+
+    /**
+     * 读取长度字段,超过MAX_DATA_LEN或为负数时抛出异常
+     */
+    public int ReadLength() throws StreamException {
+        int len = ReadInt32();
+        if (len > MAX_DATA_LEN || len < 0) {
+            throw new StreamException("Data length overflow.");
+        }
+        return len;
+    }
+
+    private int getInt32(int p) {
+        return (buf[p] & 0xff)
+                | ((buf[p + 1] & 0xff) << 8)
+                | ((buf[p + 2] & 0xff) << 16)
+                | (buf[p + 3] << 24);
+    }
+
+    private long getInt64(int p) {
+        return ((long) getInt32(p + 4) << 32) | (getInt32(p) & 0xffffffffL);
+    }
+
+    /**
+     * 剩余数据不足len时抛出异常,否则前移读取位置并返回原位置
+     */
+    private int advance(int len) throws StreamException {
+        int p = pos;
+        if (count - p < len) {
             throw new StreamException();
         }
-        return ByteHelper.ToInt64(buffer);
+        pos = p + len;
+        return p;
     }
 }
@@ -20,13 +20,10 @@
  */
 package com.bj58.spat.gaea.serializer.component;
 
-import com.bj58.spat.gaea.serializer.component.helper.ByteHelper;
-
 import java.io.ByteArrayOutputStream;
 import java.nio.charset.Charset;
 import java.io.IOException;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
 
 /**
  * GaeaOutStream
@@ -35,59 +32,260 @@ import java.util.Map;
  */
 public class GaeaOutStream extends ByteArrayOutputStream {
 
-    public Charset Encoder = Charset.forName("UTF-8");
-    private Map<Integer, Object> _RefPool = new HashMap<Integer, Object>();
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    public Charset Encoder = UTF8;
+    /**
+     * 引用池,按对象地址查找已写入的对象
+     */
+    private final IdentityRefMap _RefPool = new IdentityRefMap();
+    /**
+     * 最近分配的引用ID,与原来的实现一样从1001开始
+     */
+    private int refId = 1000;
+
+    public GaeaOutStream() {
+        super();
+    }
+
+    public GaeaOutStream(int size) {
+        super(size);
+    }
 
     public boolean WriteRef(Object obj) throws IOException {
+        return WriteRef(obj, true);
+    }
+
+    /**
+     * <pre>
+     * 写入引用标记(1 byte)和引用ID(4 bytes)。
+     * 同一个对象实例再次写入时只写引用,返回true,调用方不再写对象内容。
+     * tracking为false时不放入引用池,总是按新对象写入,字节格式不变,
+     * 用于确定不会被重复引用的类型,以及旧版本反序列化时不会登记引用的类型。
+     * </pre>
+     */
+    public boolean WriteRef(Object obj, boolean tracking) throws IOException {
         if (obj == null) {
             this.WriteByte((byte) 1);
             this.WriteInt32((int) 0);
             return true;
         }
-        int objHashcode = getHashCode(obj);
-        if (_RefPool.containsKey(objHashcode)) {
-            WriteByte((byte) 1);
-            WriteInt32(objHashcode);
-            return true;
+        if (tracking) {
+            int id = _RefPool.get(obj);
+            if (id != 0) {
+                WriteByte((byte) 1);
+                WriteInt32(id);
+                return true;
+            }
+            _RefPool.put(obj, ++refId);
         } else {
-            _RefPool.put(objHashcode, obj);
-            WriteByte((byte) 0);
-            WriteInt32(objHashcode);
-            return false;
+            ++refId;
         }
+        WriteByte((byte) 0);
+        WriteInt32(refId);
+        return false;
     }
 
+    /**
+     * 以下写入方法直接按小端序写入内部缓冲区,不再为每个基本类型分配临时数组,也不经过同步方法
+     */
     public void WriteByte(byte value) throws IOException {
-        this.write(new byte[]{value});
+        ensureCapacity(1);
+        buf[count++] = value;
     }
 
     public void WriteInt16(short value) throws IOException {
-        byte[] buffer = ByteHelper.GetBytesFromInt16(value);
-        this.write(buffer);
+        ensureCapacity(2);
+        buf[count] = (byte) value;
+        buf[count + 1] = (byte) (value >> 8);
+        count += 2;
     }
 
     public void WriteInt32(int value) throws IOException {
-        byte[] buffer = ByteHelper.GetBytesFromInt32(value);
-        this.write(buffer);
+        ensureCapacity(4);
+        count = putInt32(count, value);
     }
 
     public void WriteInt64(long value) throws IOException {
-        byte[] buffer = ByteHelper.GetBytesFromInt64(value);
-        this.write(buffer);
-    }
-    
-    private int hashCode = 1000;
-    private Map<Object, Integer> _objMap = new HashMap<Object, Integer>();
-    
-    private int getHashCode(Object obj) {
-    	if (obj == null) {
-            return 0;
+        ensureCapacity(8);
+        count = putInt64(count, value);
+    }
+
+    /**
+     * 批量写入基本类型数组(不含长度),只检查一次容量,逐个元素与WriteInt32等单个写入的字节完全相同
+     */
+    public void WriteInt16(short[] values) {
+        ensureCapacity(values.length << 1);
+        int p = count;
+        for (short v : values) {
+            buf[p] = (byte) v;
+            buf[p + 1] = (byte) (v >> 8);
+            p += 2;
         }
-        if (_objMap.containsKey(obj) && obj == _objMap.get(obj)) {
-        	return _objMap.get(obj);
-        } else {
-        	_objMap.put(obj, ++hashCode);
-            return hashCode;
+        count = p;
+    }
+
+    public void WriteInt32(int[] values) {
+        ensureCapacity(values.length << 2);
+        int p = count;
+        for (int v : values) {
+            p = putInt32(p, v);
+        }
+        count = p;
+    }
+
+    public void WriteInt64(long[] values) {
+        ensureCapacity(values.length << 3);
+        int p = count;
+        for (long v : values) {
+            p = putInt64(p, v);
+        }
+        count = p;
+    }
+
+    public void WriteFloat(float[] values) {
+        ensureCapacity(values.length << 2);
+        int p = count;
+        for (float v : values) {
+            p = putInt32(p, Float.floatToIntBits(v));
+        }
+        count = p;
+    }
+
+    public void WriteDouble(double[] values) {
+        ensureCapacity(values.length << 3);
+        int p = count;
+        for (double v : values) {
+            p = putInt64(p, Double.doubleToLongBits(v));
+        }
+        count = p;
+    }
+
+    private int putInt32(int p, int v) {
+        buf[p] = (byte) v;
+        buf[p + 1] = (byte) (v >> 8);
+        buf[p + 2] = (byte) (v >> 16);
+        buf[p + 3] = (byte) (v >> 24);
+        return p + 4;
+    }
+
+    private int putInt64(int p, long v) {
+        putInt32(p, (int) v);
+        return putInt32(p + 4, (int) (v >> 32));
+    }
+
+    /**
+     * <pre>
+     * 写入字符串的字节长度(4 bytes)和按Encoder编码的字节。
+     * UTF-8时直接编码到缓冲区再回填长度,不生成中间byte[];纯ASCII部分逐字节复制。
+     * 未配对的代理字符与String.getBytes一样写为'?'。
+     * </pre>
+     */
+    public void WriteString(String str) throws IOException {
+        if (!UTF8.equals(Encoder)) {
+            byte[] bytes = str.getBytes(Encoder);
+            WriteInt32(bytes.length);
+            write(bytes, 0, bytes.length);
+            return;
+        }
+        int len = str.length();
+        //短字符串按最坏情况预留,长字符串先算出实际长度,避免预留过多
+        ensureCapacity(4 + (len > 4096 ? utf8Length(str) : len * 3));
+        int start = count + 4;
+        int p = start;
+        int i = 0;
+        for (; i < len; i++) {
+            char c = str.charAt(i);
+            if (c >= 0x80) {
+                break;
+            }
+            buf[p++] = (byte) c;
+        }
+        for (; i < len; i++) {
+            char c = str.charAt(i);
+            if (c < 0x80) {
+                buf[p++] = (byte) c;
+            } else if (c < 0x800) {
+                buf[p++] = (byte) (0xc0 | (c >> 6));
+                buf[p++] = (byte) (0x80 | (c & 0x3f));
+            } else if (Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(str.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, str.charAt(++i));
+                buf[p++] = (byte) (0xf0 | (cp >> 18));
+                buf[p++] = (byte) (0x80 | ((cp >> 12) & 0x3f));
+                buf[p++] = (byte) (0x80 | ((cp >> 6) & 0x3f));
+                buf[p++] = (byte) (0x80 | (cp & 0x3f));
+            } else if (Character.isHighSurrogate(c) || Character.isLowSurrogate(c)) {
+                buf[p++] = (byte) '?';
+            } else {
+                buf[p++] = (byte) (0xe0 | (c >> 12));
+                buf[p++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                buf[p++] = (byte) (0x80 | (c & 0x3f));
+            }
+        }
+        putInt32(count, p - start);
+        count = p;
+    }
+
+    private static int utf8Length(String str) {
+        int len = str.length();
+        int n = len;
+        for (int i = 0; i < len; i++) {
+            char c = str.charAt(i);
+            if (c < 0x80) {
+                continue;
+            } else if (c < 0x800) {
+                n += 1;
+            } else if (Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(str.charAt(i + 1))) {
+                n += 2;
+                i++;
+            } else if (!Character.isHighSurrogate(c) && !Character.isLowSurrogate(c)) {
+                n += 2;
+            }
+        }
+        return n;
+    }
+
+    @Override
+    public void write(int b) {
+        ensureCapacity(1);
+        buf[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        if ((off < 0) || (off > b.length) || (len < 0) || ((off + len) - b.length > 0)) {
+            throw new IndexOutOfBoundsException();
+        }
+        ensureCapacity(len);
+        System.arraycopy(b, off, buf, count, len);
+        count += len;
+    }
+
+    /**
+     * 清空已写入的数据和引用池,保留已分配的缓冲区以便复用
+     */
+    @Override
+    public void reset() {
+        count = 0;
+        refId = 1000;
+        _RefPool.reset();
+    }
+
+    /**
+     * 内部缓冲区,有效数据为[0, size()),调用方可直接使用而无需toByteArray()复制
+     */
+    public byte[] getBuffer() {
+        return buf;
+    }
+
+    private void ensureCapacity(int len) {
+        int minCapacity = count + len;
+        if (minCapacity - buf.length > 0) {
+            int newCapacity = buf.length << 1;
+            if (newCapacity - minCapacity < 0) {
+                newCapacity = minCapacity;
+            }
+            buf = Arrays.copyOf(buf, newCapacity);
         }
     }
 }
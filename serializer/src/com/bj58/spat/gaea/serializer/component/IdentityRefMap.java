@@ -0,0 +1,109 @@
+/*
+ *  Copyright Beijing 58 Information Technology Co.,Ltd.
+ *
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package com.bj58.spat.gaea.serializer.component;
+
+import java.util.Arrays;
+
+/**
+ * <pre>
+ * IdentityRefMap
+ * 序列化时的引用池,按对象地址(==)而不是equals/hashCode查找,不会调用业务对象的hashCode。
+ * 开放寻址(线性探测),reset()只清空已使用的槽位,同一个流可在多次序列化间复用。
+ * </pre>
+ * @author Service Platform Architecture Team (spat@58.com)
+ */
+final class IdentityRefMap {
+
+    private static final int INIT_CAPACITY = 64;
+    /**
+     * reset时超过该容量则缩回初始大小,避免一次大消息后长期占用内存
+     */
+    private static final int MAX_RETAINED_CAPACITY = 1 << 14;
+
+    private Object[] keys = new Object[INIT_CAPACITY];
+    private int[] values = new int[INIT_CAPACITY];
+    private int size;
+
+    /**
+     * @return obj对应的引用ID,不存在时返回0
+     */
+    public int get(Object obj) {
+        int mask = keys.length - 1;
+        int i = hash(obj) & mask;
+        Object k;
+        while ((k = keys[i]) != null) {
+            if (k == obj) {
+                return values[i];
+            }
+            i = (i + 1) & mask;
+        }
+        return 0;
+    }
+
+    /**
+     * 调用方保证obj尚未放入
+     */
+    public void put(Object obj, int id) {
+        if ((size + 1) << 1 > keys.length) {
+            resize(keys.length << 1);
+        }
+        insert(obj, id);
+        size++;
+    }
+
+    public void reset() {
+        if (keys.length > MAX_RETAINED_CAPACITY) {
+            keys = new Object[INIT_CAPACITY];
+            values = new int[INIT_CAPACITY];
+        } else if (size > 0) {
+            Arrays.fill(keys, null);
+        }
+        size = 0;
+    }
+
+    private void insert(Object obj, int id) {
+        int mask = keys.length - 1;
+        int i = hash(obj) & mask;
+        while (keys[i] != null) {
+            i = (i + 1) & mask;
+        }
+        keys[i] = obj;
+        values[i] = id;
+    }
+
+    private void resize(int capacity) {
+        Object[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new Object[capacity];
+        values = new int[capacity];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != null) {
+                insert(oldKeys[i], oldValues[i]);
+            }
+        }
+    }
+
+    private static int hash(Object obj) {
+        int h = System.identityHashCode(obj);
+        //把高位混入低位后再按容量取低位
+        return h ^ (h >>> 16);
+    }
+}
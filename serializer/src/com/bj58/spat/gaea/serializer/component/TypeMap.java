@@ -24,8 +24,9 @@ import java.util.Map;
 import java.util.Set;
 import java.util.Date;
 import java.util.List;
-import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.io.IOException;
 import java.math.BigDecimal;
 import java.lang.reflect.Array;
@@ -65,7 +66,7 @@ public final class TypeMap {
      * 多个类型可以对应同一个ClassItem，例如日期类型Date.class, java.sql.Date.class，对应同一个ClassItem。
      * </pre>
      */
-    private static Map<Class, ClassItem> classToClassItemMap = new HashMap<Class, ClassItem>();
+    private static Map<Class, ClassItem> classToClassItemMap = new ConcurrentHashMap<Class, ClassItem>();
     /**
      * <pre>
      * 类型在ClassList列表中的索引index与ClassItem的对应关系
@@ -73,7 +74,19 @@ public final class TypeMap {
      * 如果是自定义类型的索引ID是根据name生成的哈希值
      * </pre>
      */
-    private static Map<Integer, ClassItem> indexToClassItemMap = new HashMap<Integer, ClassItem>();
+    private static Map<Integer, ClassItem> indexToClassItemMap = new ConcurrentHashMap<Integer, ClassItem>();
+    /**
+     * 具体类型(如ArrayList、int[])与typeId的对应关系,避免每次都判断数组、Map、List和查找注解
+     */
+    private static Map<Class, Integer> typeIdCache = new ConcurrentHashMap<Class, Integer>();
+    /**
+     * 每次InitTypeMap后加1,上层缓存据此判断是否失效
+     */
+    private static volatile int version = 0;
+    /**
+     * 扫描到的自定义类型,扫描完成后整体替换
+     */
+    private static volatile Set<Class> customTypes = Collections.emptySet();
 
     /**
      * <pre>
@@ -85,6 +98,8 @@ public final class TypeMap {
     public static void InitTypeMap() {
         classToClassItemMap.clear();
         indexToClassItemMap.clear();
+        typeIdCache.clear();
+        version++;
         ArrayList<ClassItem> ClassList = new ArrayList<ClassItem>();
 
         //初始化系统默认的类型
@@ -166,6 +181,7 @@ public final class TypeMap {
             basePakage = StrHelper.EmptyString;
         }
         Set<Class> classes = cs.scanGaeaSerializableClass(basePakage.split(";"));
+        customTypes = Collections.unmodifiableSet(classes);
         for (Class c : classes) {
             logger.info( "[ " + Thread.currentThread().getName()+" ]"+"Scaning " + c.getPackage().getName() + "." + c.getName());
             try {
@@ -187,6 +203,13 @@ public final class TypeMap {
         }
     }
 
+    /**
+     * 扫描到的包含GaeaSerializable注解的类型
+     */
+    public static Set<Class> getCustomTypes() {
+        return customTypes;
+    }
+
     /**
      * 根据typeId找到对应的类型ClassItem
      * @param typeId
@@ -220,7 +243,21 @@ public final class TypeMap {
      * @return
      * @throws DisallowedSerializeException
      */
+    public static int getVersion() {
+        return version;
+    }
+
     public static int getTypeId(Class type) throws DisallowedSerializeException {
+        Integer cached = typeIdCache.get(type);
+        if (cached != null) {
+            return cached;
+        }
+        int typeId = resolveTypeId(type);
+        typeIdCache.put(type, typeId);
+        return typeId;
+    }
+
+    private static int resolveTypeId(Class type) throws DisallowedSerializeException {
         int typeId = 0;
         if (type.isArray()) {
             type = Array.class;
@@ -45,4 +45,12 @@ public @interface GaeaSerializable {
      * @return
      */
     boolean defaultAll() default false;
+
+    /**
+     * 是否对该类型的对象做引用跟踪。
+     * 为true时同一实例在一次序列化中重复出现只写入引用；
+     * 确定该类型的对象不会被重复引用或循环引用时可设为false，省去引用池的查找，写出的字节格式不变。
+     * @return
+     */
+    boolean reference() default true;
 }
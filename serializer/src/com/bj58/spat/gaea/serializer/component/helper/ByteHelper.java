@@ -187,6 +187,13 @@ public class ByteHelper {
         return b;
     }
 
+    /**
+     * 将ReadInt16读出的值还原为char,char写入时高位在前(见GetBytesFromChar)
+     */
+    public static char ToChar(short value) {
+        return (char) (((value & 0xff) << 8) | ((value >> 8) & 0xff));
+    }
+
     public static char getCharFromBytes(byte[] b) {
         int s = 0;
         if (b[0] > 0) {
@@ -30,6 +30,7 @@ import com.bj58.spat.gaea.serializer.component.helper.TypeHelper;
 import com.bj58.spat.gaea.serializer.serializer.SerializerBase;
 
 import java.lang.reflect.Array;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * ArraySerializer
@@ -38,6 +39,8 @@ import java.lang.reflect.Array;
  */
 class ArraySerializer extends SerializerBase {
 
+	private static final ConcurrentHashMap<Class, Class> ELEMENT_TYPES = new ConcurrentHashMap<Class, Class>();
+
 	@Override
 	public void WriteObject(Object obj, GaeaOutStream outStream) throws Exception {
 		if (obj == null) {
@@ -45,77 +48,58 @@ class ArraySerializer extends SerializerBase {
 			return;
 		}
 
-		Class type = ClassHelper.GetClassForName(obj.getClass().getCanonicalName().replace("[]", StrHelper.EmptyString));
+		Class type = GetElementType(obj.getClass());
 		int typeId = TypeHelper.GetTypeId(type);
 
 		outStream.WriteInt32(typeId);
-		if (outStream.WriteRef(obj)) {
+		// 反序列化基本类型数组和byte数组时不登记引用,这两种数组总是按新对象写入
+		Class componentType = obj.getClass().getComponentType();
+		if (outStream.WriteRef(obj, !componentType.isPrimitive() && type != Byte.class)) {
 			return;
 		}
 
-		if (obj.getClass().getComponentType().isPrimitive()) {
-			if (type == Character.class) {
-				char[] charArray = (char[]) obj;
-				outStream.WriteInt32(charArray.length);
-				for (char item : charArray) {
-					SerializerFactory.GetSerializer(char.class).WriteObject(item, outStream);
-				}
-				charArray = null;
-				return;
-			} else if (type == Short.class) {
-				short[] shortArray = (short[]) obj;
-				outStream.WriteInt32(shortArray.length);
-				for (short item : shortArray) {
-					SerializerFactory.GetSerializer(short.class).WriteObject(item, outStream);
-				}
-				shortArray = null;
-				return;
-			} else if (type == Integer.class) {
+		// 基本类型数组:写一次长度后整体写入,不装箱也不逐个查找序列化类
+		if (componentType.isPrimitive()) {
+			if (componentType == byte.class) {
+				byte[] byteArray = (byte[]) obj;
+				outStream.WriteInt32(byteArray.length);
+				outStream.write(byteArray, 0, byteArray.length);
+			} else if (componentType == int.class) {
 				int[] intArray = (int[]) obj;
 				outStream.WriteInt32(intArray.length);
-				for (int intItem : intArray) {
-					SerializerFactory.GetSerializer(int.class).WriteObject(intItem, outStream);
-				}
-				intArray = null;
-				return;
-			} else if (type == Float.class) {
-				float[] floatArray = (float[]) obj;
-				outStream.WriteInt32(floatArray.length);
-				for (float item : floatArray) {
-					SerializerFactory.GetSerializer(float.class).WriteObject(item, outStream);
-				}
-				floatArray = null;
-				return;
-			} else if (type == Long.class) {
+				outStream.WriteInt32(intArray);
+			} else if (componentType == long.class) {
 				long[] longArray = (long[]) obj;
 				outStream.WriteInt32(longArray.length);
-				for (long item : longArray) {
-					SerializerFactory.GetSerializer(long.class).WriteObject(item, outStream);
-				}
-				longArray = null;
-				return;
-			} else if (type == Double.class) {
+				outStream.WriteInt64(longArray);
+			} else if (componentType == float.class) {
+				float[] floatArray = (float[]) obj;
+				outStream.WriteInt32(floatArray.length);
+				outStream.WriteFloat(floatArray);
+			} else if (componentType == double.class) {
 				double[] doubleArray = (double[]) obj;
 				outStream.WriteInt32(doubleArray.length);
-				for (double item : doubleArray) {
-					SerializerFactory.GetSerializer(double.class).WriteObject(item, outStream);
+				outStream.WriteDouble(doubleArray);
+			} else if (componentType == short.class) {
+				short[] shortArray = (short[]) obj;
+				outStream.WriteInt32(shortArray.length);
+				outStream.WriteInt16(shortArray);
+			} else if (componentType == char.class) {
+				char[] charArray = (char[]) obj;
+				outStream.WriteInt32(charArray.length);
+				for (char item : charArray) {
+					// 高位在前,与CharSerializer一致
+					outStream.WriteByte((byte) (item >> 8));
+					outStream.WriteByte((byte) item);
 				}
-				doubleArray = null;
-				return;
-			} else if (type == Boolean.class) {
+			} else if (componentType == boolean.class) {
 				boolean[] booleanArray = (boolean[]) obj;
 				outStream.WriteInt32(booleanArray.length);
 				for (boolean item : booleanArray) {
-					SerializerFactory.GetSerializer(boolean.class).WriteObject(item, outStream);
+					outStream.WriteByte(item ? (byte) 1 : (byte) 0);
 				}
-				booleanArray = null;
-				return;
-			} else if (type == Byte.class) {
-				byte[] byteArray = (byte[]) obj;
-				outStream.WriteInt32(byteArray.length);
-				outStream.write(byteArray);
-				return;
 			}
+			return;
 		}
 
 		if (type == Byte.class) {
@@ -134,19 +118,13 @@ class ArraySerializer extends SerializerBase {
 
 		if (!TypeHelper.IsPrimitive(type)) {
 			for (Object item : array) {
-				if (item == null) {
-					SerializerFactory.GetSerializer(null).WriteObject(null, outStream);
-				} else {
-					Class itemType = item.getClass();
-					int itemTypeId = TypeHelper.GetTypeId(itemType);
-					outStream.WriteInt32(itemTypeId);
-					SerializerFactory.GetSerializer(itemType).WriteObject(item, outStream);
-				}
+				SerializerFactory.WriteObjectWithType(item, outStream);
 			}
 		} else {
 			// 基本类型
+			SerializerBase serializer = SerializerFactory.GetSerializer(type);
 			for (Object item : array) {
-				SerializerFactory.GetSerializer(item.getClass()).WriteObject(item, outStream);
+				serializer.WriteObject(item, outStream);
 			}
 		}
 	}
@@ -158,15 +136,12 @@ class ArraySerializer extends SerializerBase {
 		if (typeId == 0) {
 			return null;
 		}
-		byte isRef = (byte) inStream.read();
+		byte isRef = inStream.ReadByte();
 		int hashcode = inStream.ReadInt32();
 		if (isRef > 0) {
 			return inStream.GetRef(hashcode);
 		}
-		int len = inStream.ReadInt32();
-		if (len > inStream.MAX_DATA_LEN) {
-			throw new StreamException("Data length overflow.");
-		}
+		int len = inStream.ReadLength();
 		Class type = TypeHelper.GetType(typeId);
 		if (type == null) {
 			throw new ClassNotFoundException(
@@ -180,56 +155,47 @@ class ArraySerializer extends SerializerBase {
 
 		if (defType != null && defType.getComponentType() != null
 				&& defType.getComponentType().isPrimitive()) {
-			if (defType == char[].class) {
-				char[] charArray = new char[len];
-				for (int i = 0; i < len; i++) {
-					short data = inStream.ReadInt16();
-					byte[] buffer = ByteHelper.GetBytesFromInt16(data);
-					charArray[i] = ByteHelper.getCharFromBytes(buffer);
-					;
-				}
-				return charArray;
-			} else if (defType == short[].class) {
-				short[] shortArray = new short[len];
-				for (int i = 0; i < len; i++) {
-					short shortValue = inStream.ReadInt16();
-					shortArray[i] = shortValue;
-				}
-				return shortArray;
-			} else if (defType == float[].class) {
-				float[] floatArray = new float[len];
-				for (int i = 0; i < len; i++) {
-					int floatValue = inStream.ReadInt32();
-					floatArray[i] = Float.intBitsToFloat(floatValue);
-				}
-				return floatArray;
-			} else if (defType == long[].class) {
+			Class componentType = defType.getComponentType();
+			if (componentType == int.class) {
+				CheckRemaining(inStream, len, 4);
+				int[] intArray = new int[len];
+				inStream.ReadInt32(intArray);
+				return intArray;
+			} else if (componentType == long.class) {
+				CheckRemaining(inStream, len, 8);
 				long[] longArray = new long[len];
-				for (int i = 0; i < len; i++) {
-					longArray[i] = inStream.ReadInt64();
-				}
+				inStream.ReadInt64(longArray);
 				return longArray;
-			} else if (defType == double[].class) {
+			} else if (componentType == float.class) {
+				CheckRemaining(inStream, len, 4);
+				float[] floatArray = new float[len];
+				inStream.ReadFloat(floatArray);
+				return floatArray;
+			} else if (componentType == double.class) {
+				CheckRemaining(inStream, len, 8);
 				double[] doubleArray = new double[len];
-				for (int i = 0; i < len; i++) {
-					long doubleValue = inStream.ReadInt64();
-					doubleArray[i] = Double.longBitsToDouble(doubleValue);
-				}
+				inStream.ReadDouble(doubleArray);
 				return doubleArray;
-			} else if (defType == int[].class) {
-				int[] intArray = new int[len];
+			} else if (componentType == short.class) {
+				CheckRemaining(inStream, len, 2);
+				short[] shortArray = new short[len];
+				inStream.ReadInt16(shortArray);
+				return shortArray;
+			} else if (componentType == char.class) {
+				CheckRemaining(inStream, len, 2);
+				char[] charArray = new char[len];
 				for (int i = 0; i < len; i++) {
-					int intValue = inStream.ReadInt32();
-					intArray[i] = intValue;
+					charArray[i] = ByteHelper.ToChar(inStream.ReadInt16());
 				}
-				return intArray;
-			} else if (defType == boolean[].class) {
+				return charArray;
+			} else if (componentType == boolean.class) {
+				CheckRemaining(inStream, len, 1);
 				boolean[] booleanArray = new boolean[len];
 				for (int i = 0; i < len; i++) {
-					booleanArray[i] = inStream.read() > 0;
+					booleanArray[i] = inStream.ReadByte() != 0;
 				}
 				return booleanArray;
-			} else if (defType == byte[].class) {
+			} else if (componentType == byte.class) {
 				byte[] buffer = new byte[len];
 				inStream.SafeRead(buffer);
 				return buffer;
@@ -253,12 +219,34 @@ class ArraySerializer extends SerializerBase {
 				}
 			}
 		} else {
+			SerializerBase serializer = SerializerFactory.GetSerializer(type);
 			for (int i = 0; i < len; i++) {
-				Object value = SerializerFactory.GetSerializer(type).ReadObject(inStream, type);
+				Object value = serializer.ReadObject(inStream, type);
 				array[i] = value;
 			}
 		}
 		inStream.SetRef(hashcode, array);
 		return array;
 	}
+
+	/**
+	 * 数组类型对应的元素类型(基本类型转为包装类),结果缓存,不再每次按类名解析
+	 */
+	private static Class GetElementType(Class arrayType) throws ClassNotFoundException {
+		Class type = ELEMENT_TYPES.get(arrayType);
+		if (type == null) {
+			type = ClassHelper.GetClassForName(arrayType.getCanonicalName().replace("[]", StrHelper.EmptyString));
+			ELEMENT_TYPES.put(arrayType, type);
+		}
+		return type;
+	}
+
+	/**
+	 * 分配数组前检查剩余数据是否足够,避免错误的长度导致分配过大的数组
+	 */
+	private static void CheckRemaining(GaeaInStream inStream, int len, int size) throws StreamException {
+		if ((long) len * size > inStream.available()) {
+			throw new StreamException();
+		}
+	}
 }
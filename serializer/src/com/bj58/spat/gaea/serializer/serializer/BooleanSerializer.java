@@ -42,6 +42,6 @@ class BooleanSerializer extends SerializerBase {
 
     @Override
     public Object ReadObject(GaeaInStream inStream, Class defType) throws Exception {
-        return inStream.read() > 0;
+        return inStream.ReadByte() != 0;
     }
 }
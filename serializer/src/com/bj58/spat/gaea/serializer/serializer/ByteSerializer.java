@@ -38,6 +38,6 @@ class ByteSerializer extends SerializerBase {
 
     @Override
     public Object ReadObject(GaeaInStream inStream, Class defType) throws Exception {
-        return (byte) inStream.read();
+        return inStream.ReadByte();
     }
 }
@@ -34,16 +34,15 @@ class CharSerializer extends SerializerBase {
 
     @Override
     public void WriteObject(Object obj, GaeaOutStream outStream) throws Exception {
-        byte[] bs = ByteHelper.GetBytesFromChar((Character) obj);
-        for (byte b : bs) {
-            outStream.WriteByte(b);
-        }
+        //高位在前,与ByteHelper.GetBytesFromChar一致
+        char ch = (Character) obj;
+        outStream.WriteByte((byte) (ch >> 8));
+        outStream.WriteByte((byte) ch);
     }
 
     @Override
     public Object ReadObject(GaeaInStream inStream, Class defType) throws Exception {
         short data = inStream.ReadInt16();
-        byte[] buffer = ByteHelper.GetBytesFromInt16(data);
-        return ByteHelper.getCharFromBytes(buffer);
+        return ByteHelper.ToChar(data);
     }
 }
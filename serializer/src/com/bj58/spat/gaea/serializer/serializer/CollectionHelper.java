@@ -0,0 +1,111 @@
+/*
+ *  Copyright Beijing 58 Information Technology Co.,Ltd.
+ *
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package com.bj58.spat.gaea.serializer.serializer;
+
+import com.bj58.spat.gaea.serializer.component.GaeaInStream;
+import com.bj58.spat.gaea.serializer.component.GaeaOutStream;
+import com.bj58.spat.gaea.serializer.component.helper.TypeHelper;
+
+import java.util.Collection;
+
+/**
+ * <pre>
+ * CollectionHelper
+ * 同构集合编码的读写:元素类型只写一次,元素本身不再带类型ID。
+ * Integer、Long直接读写int/long,其他类型只查找一次序列化类。
+ * </pre>
+ * @author Service Platform Architecture Team (spat@58.com)
+ */
+class CollectionHelper {
+
+    /**
+     * @return 所有元素都是同一个类且不为null时返回该类,否则返回null(元素少于2个时也返回null,同构编码没有收益)
+     */
+    public static Class GetItemType(Collection<?> items) {
+        if (items.size() < 2) {
+            return null;
+        }
+        Class type = null;
+        for (Object item : items) {
+            if (item == null) {
+                return null;
+            }
+            Class c = item.getClass();
+            if (type == null) {
+                type = c;
+            } else if (c != type) {
+                return null;
+            }
+        }
+        return type;
+    }
+
+    public static void WriteItems(Collection<?> items, Class itemType, GaeaOutStream outStream) throws Exception {
+        if (itemType == Integer.class) {
+            for (Object item : items) {
+                outStream.WriteInt32((Integer) item);
+            }
+        } else if (itemType == Long.class) {
+            for (Object item : items) {
+                outStream.WriteInt64((Long) item);
+            }
+        } else {
+            SerializerBase serializer = SerializerFactory.GetSerializer(itemType);
+            for (Object item : items) {
+                serializer.WriteObject(item, outStream);
+            }
+        }
+    }
+
+    public static void ReadItems(Collection items, int len, int itemTypeId, GaeaInStream inStream) throws Exception {
+        Class itemType = GetType(itemTypeId);
+        if (itemType == Integer.class) {
+            for (int i = 0; i < len; i++) {
+                items.add(inStream.ReadInt32());
+            }
+        } else if (itemType == Long.class) {
+            for (int i = 0; i < len; i++) {
+                items.add(inStream.ReadInt64());
+            }
+        } else {
+            SerializerBase serializer = SerializerFactory.GetSerializer(itemType);
+            for (int i = 0; i < len; i++) {
+                items.add(serializer.ReadObject(inStream, itemType));
+            }
+        }
+    }
+
+    /**
+     * 判断能否按读到的元素个数预分配集合:每个元素至少占minItemSize字节,
+     * 剩余数据容纳不下len个元素时长度有误,调用方应使用默认容量,由后续读取报错
+     */
+    public static boolean CanPresize(GaeaInStream inStream, int len, int minItemSize) {
+        return (long) len * minItemSize <= inStream.available();
+    }
+
+    public static Class GetType(int itemTypeId) throws ClassNotFoundException {
+        Class itemType = TypeHelper.GetType(itemTypeId);
+        if (itemType == null) {
+            throw new ClassNotFoundException("Cannot find class with typId,target class:(collection[item])" + ",typeId:" + itemTypeId);
+        }
+        return itemType;
+    }
+}
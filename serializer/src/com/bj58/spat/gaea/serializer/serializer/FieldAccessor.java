@@ -0,0 +1,307 @@
+/*
+ *  Copyright Beijing 58 Information Technology Co.,Ltd.
+ *
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package com.bj58.spat.gaea.serializer.serializer;
+
+import com.bj58.spat.gaea.serializer.component.GaeaInStream;
+import com.bj58.spat.gaea.serializer.component.GaeaOutStream;
+import com.bj58.spat.gaea.serializer.component.helper.ByteHelper;
+import com.bj58.spat.gaea.serializer.component.helper.TypeHelper;
+
+import java.lang.reflect.Field;
+
+/**
+ * <pre>
+ * FieldAccessor
+ * 对象字段的读写器,在生成TypeInfo时按字段类型创建一次,仍通过反射访问字段。
+ * 基本类型字段(PrimitiveAccessor)用Field.getInt/setInt等读写,不装箱,也不再逐个字段查找TypeId和序列化类;
+ * 其他字段(ObjectAccessor)与原来一样按值的实际类型写入类型ID后交给对应的序列化类。
+ * 写出的字节与逐个字段调用SerializerFactory完全一致。
+ * </pre>
+ * @author Service Platform Architecture Team (spat@58.com)
+ */
+abstract class FieldAccessor {
+
+    protected final Field field;
+
+    protected FieldAccessor(Field field) {
+        this.field = field;
+    }
+
+    public Field getField() {
+        return field;
+    }
+
+    /**
+     * 写入字段的类型ID和值
+     */
+    public abstract void write(Object obj, GaeaOutStream outStream) throws Exception;
+
+    /**
+     * 读取字段的类型ID和值并赋给obj
+     */
+    public abstract void read(Object obj, GaeaInStream inStream) throws Exception;
+
+    /**
+     * 通用读取,按发送方写入的类型ID查找序列化类
+     */
+    protected void readAny(Object obj, GaeaInStream inStream, int ptypeId) throws Exception {
+        if (ptypeId == 0) {
+            field.set(obj, null);
+            return;
+        }
+        Class ptype = TypeHelper.GetType(ptypeId);
+        if (ptype == null) {
+            throw new ClassNotFoundException("Cannot find class with typId,target class: " + field.getType().getName() + ",typeId:" + ptypeId);
+        }
+        //TODO renjia IGaeaSerializer接口尚未实现
+        if (IGaeaSerializer.class.isAssignableFrom(ptype)) {
+            IGaeaSerializer value = (IGaeaSerializer) ptype.newInstance();
+            value.Derialize(inStream);
+            field.set(obj, value);
+        } else {
+            Object value = SerializerFactory.GetSerializer(ptype).ReadObject(inStream, field.getType());
+            field.set(obj, value);
+        }
+    }
+
+    public static FieldAccessor create(Field f) throws Exception {
+        Class<?> type = f.getType();
+        if (!type.isPrimitive()) {
+            return new ObjectAccessor(f);
+        }
+        int typeId = TypeHelper.GetTypeId(type);
+        if (type == int.class) {
+            return new IntAccessor(f, typeId);
+        } else if (type == long.class) {
+            return new LongAccessor(f, typeId);
+        } else if (type == short.class) {
+            return new ShortAccessor(f, typeId);
+        } else if (type == byte.class) {
+            return new ByteAccessor(f, typeId);
+        } else if (type == char.class) {
+            return new CharAccessor(f, typeId);
+        } else if (type == boolean.class) {
+            return new BooleanAccessor(f, typeId);
+        } else if (type == float.class) {
+            return new FloatAccessor(f, typeId);
+        } else if (type == double.class) {
+            return new DoubleAccessor(f, typeId);
+        }
+        return new ObjectAccessor(f);
+    }
+
+    static class ObjectAccessor extends FieldAccessor {
+
+        ObjectAccessor(Field field) {
+            super(field);
+        }
+
+        @Override
+        public void write(Object obj, GaeaOutStream outStream) throws Exception {
+            Object value = field.get(obj);
+            if (value instanceof IGaeaSerializer) {
+                ((IGaeaSerializer) value).Serialize(outStream);
+            } else {
+                SerializerFactory.WriteObjectWithType(value, outStream);
+            }
+        }
+
+        @Override
+        public void read(Object obj, GaeaInStream inStream) throws Exception {
+            readAny(obj, inStream, inStream.ReadInt32());
+        }
+    }
+
+    /**
+     * 基本类型字段,类型ID在创建时确定
+     */
+    abstract static class PrimitiveAccessor extends FieldAccessor {
+
+        protected final int typeId;
+
+        PrimitiveAccessor(Field field, int typeId) {
+            super(field);
+            this.typeId = typeId;
+        }
+
+        @Override
+        public void read(Object obj, GaeaInStream inStream) throws Exception {
+            int ptypeId = inStream.ReadInt32();
+            if (ptypeId == typeId) {
+                readValue(obj, inStream);
+            } else {
+                readAny(obj, inStream, ptypeId);
+            }
+        }
+
+        /**
+         * 类型ID与字段声明一致时直接读取值
+         */
+        protected abstract void readValue(Object obj, GaeaInStream inStream) throws Exception;
+    }
+
+    static class IntAccessor extends PrimitiveAccessor {
+
+        IntAccessor(Field field, int typeId) {
+            super(field, typeId);
+        }
+
+        @Override
+        public void write(Object obj, GaeaOutStream outStream) throws Exception {
+            outStream.WriteInt32(typeId);
+            outStream.WriteInt32(field.getInt(obj));
+        }
+
+        @Override
+        protected void readValue(Object obj, GaeaInStream inStream) throws Exception {
+            field.setInt(obj, inStream.ReadInt32());
+        }
+    }
+
+    static class LongAccessor extends PrimitiveAccessor {
+
+        LongAccessor(Field field, int typeId) {
+            super(field, typeId);
+        }
+
+        @Override
+        public void write(Object obj, GaeaOutStream outStream) throws Exception {
+            outStream.WriteInt32(typeId);
+            outStream.WriteInt64(field.getLong(obj));
+        }
+
+        @Override
+        protected void readValue(Object obj, GaeaInStream inStream) throws Exception {
+            field.setLong(obj, inStream.ReadInt64());
+        }
+    }
+
+    static class ShortAccessor extends PrimitiveAccessor {
+
+        ShortAccessor(Field field, int typeId) {
+            super(field, typeId);
+        }
+
+        @Override
+        public void write(Object obj, GaeaOutStream outStream) throws Exception {
+            outStream.WriteInt32(typeId);
+            outStream.WriteInt16(field.getShort(obj));
+        }
+
+        @Override
+        protected void readValue(Object obj, GaeaInStream inStream) throws Exception {
+            field.setShort(obj, inStream.ReadInt16());
+        }
+    }
+
+    static class ByteAccessor extends PrimitiveAccessor {
+
+        ByteAccessor(Field field, int typeId) {
+            super(field, typeId);
+        }
+
+        @Override
+        public void write(Object obj, GaeaOutStream outStream) throws Exception {
+            outStream.WriteInt32(typeId);
+            outStream.WriteByte(field.getByte(obj));
+        }
+
+        @Override
+        protected void readValue(Object obj, GaeaInStream inStream) throws Exception {
+            field.setByte(obj, inStream.ReadByte());
+        }
+    }
+
+    static class CharAccessor extends PrimitiveAccessor {
+
+        CharAccessor(Field field, int typeId) {
+            super(field, typeId);
+        }
+
+        @Override
+        public void write(Object obj, GaeaOutStream outStream) throws Exception {
+            char ch = field.getChar(obj);
+            outStream.WriteInt32(typeId);
+            //高位在前,与CharSerializer一致
+            outStream.WriteByte((byte) (ch >> 8));
+            outStream.WriteByte((byte) ch);
+        }
+
+        @Override
+        protected void readValue(Object obj, GaeaInStream inStream) throws Exception {
+            field.setChar(obj, ByteHelper.ToChar(inStream.ReadInt16()));
+        }
+    }
+
+    static class BooleanAccessor extends PrimitiveAccessor {
+
+        BooleanAccessor(Field field, int typeId) {
+            super(field, typeId);
+        }
+
+        @Override
+        public void write(Object obj, GaeaOutStream outStream) throws Exception {
+            outStream.WriteInt32(typeId);
+            outStream.WriteByte(field.getBoolean(obj) ? (byte) 1 : (byte) 0);
+        }
+
+        @Override
+        protected void readValue(Object obj, GaeaInStream inStream) throws Exception {
+            field.setBoolean(obj, inStream.ReadByte() != 0);
+        }
+    }
+
+    static class FloatAccessor extends PrimitiveAccessor {
+
+        FloatAccessor(Field field, int typeId) {
+            super(field, typeId);
+        }
+
+        @Override
+        public void write(Object obj, GaeaOutStream outStream) throws Exception {
+            outStream.WriteInt32(typeId);
+            outStream.WriteInt32(Float.floatToIntBits(field.getFloat(obj)));
+        }
+
+        @Override
+        protected void readValue(Object obj, GaeaInStream inStream) throws Exception {
+            field.setFloat(obj, Float.intBitsToFloat(inStream.ReadInt32()));
+        }
+    }
+
+    static class DoubleAccessor extends PrimitiveAccessor {
+
+        DoubleAccessor(Field field, int typeId) {
+            super(field, typeId);
+        }
+
+        @Override
+        public void write(Object obj, GaeaOutStream outStream) throws Exception {
+            outStream.WriteInt32(typeId);
+            outStream.WriteInt64(Double.doubleToLongBits(field.getDouble(obj)));
+        }
+
+        @Override
+        protected void readValue(Object obj, GaeaInStream inStream) throws Exception {
+            field.setDouble(obj, Double.longBitsToDouble(inStream.ReadInt64()));
+        }
+    }
+}
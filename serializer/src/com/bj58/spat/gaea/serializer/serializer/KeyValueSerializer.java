@@ -47,20 +47,11 @@ class KeyValueSerializer extends SerializerBase {
         GKeyValuePair obj2 = (GKeyValuePair) obj;
         Object key = obj2.getKey();
         Object value = obj2.getValue();
-        Class itemKeyType = key.getClass();
-        int itemKeyTypeId = TypeHelper.GetTypeId(itemKeyType);
-        outStream.WriteInt32(itemKeyTypeId);
-        SerializerFactory.GetSerializer(itemKeyType).WriteObject(key, outStream);
-
-        if (value == null) {
-            SerializerFactory.GetSerializer(null).WriteObject(null, outStream);
-        } else {
-
-            Class itemValueType = value.getClass();
-            int itemValueTypeId = TypeHelper.GetTypeId(itemValueType);
-            outStream.WriteInt32(itemValueTypeId);
-            SerializerFactory.GetSerializer(itemValueType).WriteObject(value, outStream);
+        if (key == null) {
+            throw new NullPointerException("GKeyValuePair key can not be null");
         }
+        SerializerFactory.WriteObjectWithType(key, outStream);
+        SerializerFactory.WriteObjectWithType(value, outStream);
     }
 
     @Override
@@ -69,7 +60,7 @@ class KeyValueSerializer extends SerializerBase {
         if (typeId == 0) {
             return null;
         }
-        byte isRef = (byte) inStream.read();
+        byte isRef = inStream.ReadByte();
         int hashcode = inStream.ReadInt32();
         if (isRef > 0) {
             return inStream.GetRef(hashcode);
@@ -23,7 +23,6 @@ package com.bj58.spat.gaea.serializer.serializer;
 import com.bj58.spat.gaea.serializer.component.GaeaInStream;
 import com.bj58.spat.gaea.serializer.component.GaeaOutStream;
 import com.bj58.spat.gaea.serializer.component.exception.ClassNoMatchException;
-import com.bj58.spat.gaea.serializer.component.exception.StreamException;
 import com.bj58.spat.gaea.serializer.component.helper.TypeHelper;
 import com.bj58.spat.gaea.serializer.serializer.SerializerBase;
 
@@ -32,32 +31,41 @@ import java.util.ArrayList;
 import java.util.List;
 
 /**
+ * <pre>
  * ListSerializer
- * 
+ * 普通编码：list类型ID(19) | isRef | ref hashcode | 长度 | (元素类型ID | 元素)...
+ * 同构编码：同构类型ID(26) | isRef | ref hashcode | 长度 | 元素类型ID | 元素...
+ * 同构编码只在开启Serializer.HomogeneousCollection且所有元素都是同一个类、不为null时使用。
+ * </pre>
  * @author Service Platform Architecture Team (spat@58.com)
  */
 class ListSerializer extends SerializerBase {
 
+    /**
+     * 同构List的类型标记,TypeMap中没有使用该ID
+     */
+    static final int HOMOGENEOUS_TYPE_ID = 26;
+
     @Override
     public void WriteObject(Object obj, GaeaOutStream outStream) throws Exception {
         if (obj == null) {
             SerializerFactory.GetSerializer(null).WriteObject(null, outStream);
         }
         List list = (List) obj;
-        int typeId = TypeHelper.GetTypeId(List.class);
+        Class itemType = Serializer.HomogeneousCollection ? CollectionHelper.GetItemType(list) : null;
+        int typeId = itemType != null ? HOMOGENEOUS_TYPE_ID : TypeHelper.GetTypeId(List.class);
         outStream.WriteInt32(typeId);
         if (outStream.WriteRef(obj)) {
             return;
         }
         outStream.WriteInt32(list.size());
+        if (itemType != null) {
+            outStream.WriteInt32(TypeHelper.GetTypeId(itemType));
+            CollectionHelper.WriteItems(list, itemType, outStream);
+            return;
+        }
         for (Object item : list) {
-            if (item == null) {
-                SerializerFactory.GetSerializer(null).WriteObject(item, outStream);
-            } else {
-                Class itemType = item.getClass();
-                outStream.WriteInt32(TypeHelper.GetTypeId(itemType));
-                SerializerFactory.GetSerializer(itemType).WriteObject(item, outStream);
-            }
+            SerializerFactory.WriteObjectWithType(item, outStream);
         }
     }
 
@@ -67,32 +75,40 @@ class ListSerializer extends SerializerBase {
         if (typeId == 0) {
             return null;
         }
-        byte isRef = (byte) inStream.read();
+        byte isRef = inStream.ReadByte();
         int hashcode = inStream.ReadInt32();
         if (isRef > 0) {
             return inStream.GetRef(hashcode);
         }
-        int len = inStream.ReadInt32();
-        if (len > inStream.MAX_DATA_LEN) {
-            throw new StreamException("Data length overflow.");
-        }
-        Class type = TypeHelper.GetType(typeId);
-        if (type == null) {
-            throw new ClassNotFoundException("Cannot find class with typId,target class:" + defType.getName() + ",typeId:" + typeId);
-        }
-        if (type != List.class) {
-            throw new ClassNoMatchException("Class must be list!type:" + type.getName());
+        int len = inStream.ReadLength();
+        boolean homogeneous = typeId == HOMOGENEOUS_TYPE_ID;
+        if (!homogeneous) {
+            Class type = TypeHelper.GetType(typeId);
+            if (type == null) {
+                throw new ClassNotFoundException("Cannot find class with typId,target class:" + defType.getName() + ",typeId:" + typeId);
+            }
+            if (type != List.class) {
+                throw new ClassNoMatchException("Class must be list!type:" + type.getName());
+            }
         }
+        List list;
         int modifier = defType.getModifiers();
         if (!Modifier.isAbstract(modifier) && !Modifier.isInterface(modifier) && List.class.isAssignableFrom(defType)) {
-            type = defType;
+            list = (List) defType.newInstance();
         } else {
-            type = ArrayList.class; //default list type
-            if (!defType.isAssignableFrom(type)) {
-                throw new ClassNoMatchException("Defind type and value type not match !defind type:" + defType.getName() + ",value type:" + type.getName());
+            if (!defType.isAssignableFrom(ArrayList.class)) {
+                throw new ClassNoMatchException("Defind type and value type not match !defind type:" + defType.getName() + ",value type:" + ArrayList.class.getName());
             }
+            //default list type,按元素个数预分配;非同构元素至少有4字节的类型ID,同构元素至少1字节
+            list = CollectionHelper.CanPresize(inStream, len, homogeneous ? 1 : 4) ? new ArrayList(len) : new ArrayList();
+        }
+        //先登记引用,元素中循环引用到自身时可以找到该集合
+        inStream.SetRef(hashcode, list);
+        if (homogeneous) {
+            int itemTypeId = inStream.ReadInt32();
+            CollectionHelper.ReadItems(list, len, itemTypeId, inStream);
+            return list;
         }
-        List list = (List) type.newInstance();
         for (int i = 0; i < len; i++) {
             int itemTypeId = inStream.ReadInt32();
             if (itemTypeId == 0) {
@@ -106,7 +122,6 @@ class ListSerializer extends SerializerBase {
                 list.add(value);
             }
         }
-        inStream.SetRef(hashcode, list);
         return list;
     }
 }
@@ -23,7 +23,6 @@ package com.bj58.spat.gaea.serializer.serializer;
 import com.bj58.spat.gaea.serializer.component.GaeaInStream;
 import com.bj58.spat.gaea.serializer.component.GaeaOutStream;
 import com.bj58.spat.gaea.serializer.component.exception.ClassNoMatchException;
-import com.bj58.spat.gaea.serializer.component.exception.StreamException;
 import com.bj58.spat.gaea.serializer.component.helper.TypeHelper;
 import com.bj58.spat.gaea.serializer.serializer.SerializerBase;
 
@@ -33,41 +32,61 @@ import java.lang.reflect.Modifier;
 import java.util.HashMap;
 
 /**
+ * <pre>
  * MapSerializer
- * 
+ * 普通编码：map类型ID(24) | isRef | ref hashcode | 长度 | (键类型ID | 键 | 值类型ID | 值)...
+ * 同构编码：同构类型ID(27) | isRef | ref hashcode | 长度 | 键类型ID | 值类型ID | (键 | 值)...
+ * 同构编码只在开启Serializer.HomogeneousCollection且所有键、所有值分别是同一个类、不为null时使用。
+ * </pre>
  * @author Service Platform Architecture Team (spat@58.com)
  */
 class MapSerializer extends SerializerBase {
 
+    /**
+     * 同构Map的类型标记,TypeMap中没有使用该ID
+     */
+    static final int HOMOGENEOUS_TYPE_ID = 27;
+
     @Override
     public void WriteObject(Object obj, GaeaOutStream outStream) throws Exception {
         if (obj == null) {
             SerializerFactory.GetSerializer(null).WriteObject(null, outStream);
         }
-        int typeId = TypeHelper.GetTypeId(Map.class);
+        Map map = (Map) obj;
+        Class keyType = null;
+        Class valueType = null;
+        if (Serializer.HomogeneousCollection) {
+            keyType = CollectionHelper.GetItemType(map.keySet());
+            valueType = keyType == null ? null : CollectionHelper.GetItemType(map.values());
+        }
+        boolean homogeneous = valueType != null;
+        int typeId = homogeneous ? HOMOGENEOUS_TYPE_ID : TypeHelper.GetTypeId(Map.class);
         outStream.WriteInt32(typeId);
         if (outStream.WriteRef(obj)) {
             return;
         }
-        Map map = (Map) obj;
         outStream.WriteInt32(map.size());
         Iterator iterator = map.entrySet().iterator();
+        if (homogeneous) {
+            outStream.WriteInt32(TypeHelper.GetTypeId(keyType));
+            outStream.WriteInt32(TypeHelper.GetTypeId(valueType));
+            SerializerBase keySerializer = SerializerFactory.GetSerializer(keyType);
+            SerializerBase valueSerializer = SerializerFactory.GetSerializer(valueType);
+            while (iterator.hasNext()) {
+                Map.Entry entry = (Map.Entry) iterator.next();
+                keySerializer.WriteObject(entry.getKey(), outStream);
+                valueSerializer.WriteObject(entry.getValue(), outStream);
+            }
+            return;
+        }
         while (iterator.hasNext()) {
             Map.Entry entry = (Map.Entry) iterator.next();
-            Class keyType = entry.getKey().getClass();
-            int keyTypeId = TypeHelper.GetTypeId(keyType);
-            outStream.WriteInt32(keyTypeId);
-            SerializerFactory.GetSerializer(keyType).WriteObject(entry.getKey(), outStream);
-
-            Object value = entry.getValue();
-            if (value == null) {
-                SerializerFactory.GetSerializer(null).WriteObject(null, outStream);
-            } else {
-                Class valueType = value.getClass();
-                int valueTypeId = TypeHelper.GetTypeId(valueType);
-                outStream.WriteInt32(valueTypeId);
-                SerializerFactory.GetSerializer(valueType).WriteObject(value, outStream);
+            Object key = entry.getKey();
+            if (key == null) {
+                throw new NullPointerException("Map key can not be null");
             }
+            SerializerFactory.WriteObjectWithType(key, outStream);
+            SerializerFactory.WriteObjectWithType(entry.getValue(), outStream);
         }
     }
 
@@ -77,32 +96,47 @@ class MapSerializer extends SerializerBase {
         if (typeId == 0) {
             return null;
         }
-        byte isRef = (byte) inStream.read();
+        byte isRef = inStream.ReadByte();
         int hashcode = inStream.ReadInt32();
         if (isRef > 0) {
             return inStream.GetRef(hashcode);
         }
-        int len = inStream.ReadInt32();
-        if (len > inStream.MAX_DATA_LEN) {
-            throw new StreamException("Data length overflow.");
-        }
-        Class type = TypeHelper.GetType(typeId);
-        if (type == null) {
-            throw new ClassNotFoundException("Cannot find class with typId,target class:" + defType.getName() + ",typeId:" + typeId);
-        }
-        if (type != Map.class) {
-            throw new ClassNoMatchException("Class must be map!type:" + type.getName());
+        int len = inStream.ReadLength();
+        boolean homogeneous = typeId == HOMOGENEOUS_TYPE_ID;
+        if (!homogeneous) {
+            Class type = TypeHelper.GetType(typeId);
+            if (type == null) {
+                throw new ClassNotFoundException("Cannot find class with typId,target class:" + defType.getName() + ",typeId:" + typeId);
+            }
+            if (type != Map.class) {
+                throw new ClassNoMatchException("Class must be map!type:" + type.getName());
+            }
         }
+        Map map;
         int modifier = defType.getModifiers();
         if (!Modifier.isAbstract(modifier) && !Modifier.isInterface(modifier) && Map.class.isAssignableFrom(defType)) { // 父类.isAssignableFrom(子类)
-            type = defType;
+            map = (Map) defType.newInstance();
         } else {
-            type = HashMap.class; //default map type
-            if (!defType.isAssignableFrom(type)) {
-                throw new ClassNoMatchException("Defind type and value type not match !defind type:" + defType.getName() + ",value type:" + type.getName());
+            if (!defType.isAssignableFrom(HashMap.class)) {
+                throw new ClassNoMatchException("Defind type and value type not match !defind type:" + defType.getName() + ",value type:" + HashMap.class.getName());
             }
+            //default map type,按元素个数预分配,避免读取过程中扩容;
+            //非同构元素的键和值各有4字节的类型ID,同构元素的键和值至少各1字节
+            map = CollectionHelper.CanPresize(inStream, len, homogeneous ? 2 : 8) ? new HashMap((int) (len / 0.75f) + 1) : new HashMap();
+        }
+        //先登记引用,元素中循环引用到自身时可以找到该集合
+        inStream.SetRef(hashcode, map);
+        if (homogeneous) {
+            Class keyType = CollectionHelper.GetType(inStream.ReadInt32());
+            Class valueType = CollectionHelper.GetType(inStream.ReadInt32());
+            SerializerBase keySerializer = SerializerFactory.GetSerializer(keyType);
+            SerializerBase valueSerializer = SerializerFactory.GetSerializer(valueType);
+            for (int i = 0; i < len; i++) {
+                Object key = keySerializer.ReadObject(inStream, keyType);
+                map.put(key, valueSerializer.ReadObject(inStream, valueType));
+            }
+            return map;
         }
-        Map map = (Map) type.newInstance();
         for (int i = 0; i < len; i++) {
             int keyTypeId = inStream.ReadInt32();
             Class keyType = TypeHelper.GetType(keyTypeId);
@@ -120,7 +154,6 @@ class MapSerializer extends SerializerBase {
             
             map.put(key, value);
         }
-        inStream.SetRef(hashcode, map);
         return map;
     }
 }
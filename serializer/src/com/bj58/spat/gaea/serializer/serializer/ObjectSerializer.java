@@ -33,11 +33,14 @@ import com.bj58.spat.gaea.serializer.serializer.IGaeaSerializer;
 import com.bj58.spat.gaea.serializer.serializer.SerializerBase;
 import com.bj58.spat.gaea.serializer.serializer.TypeInfo;
 
+import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * <pre>
@@ -57,22 +60,11 @@ public class ObjectSerializer extends SerializerBase {
         Class<?> type = obj.getClass();
         TypeInfo typeInfo = GetTypeInfo(type);
         outStream.WriteInt32(typeInfo.TypeId);
-        if (outStream.WriteRef(obj)) {
+        if (outStream.WriteRef(obj, typeInfo.Reference)) {
             return;
         }
-        for (Field f : typeInfo.Fields) {
-            Object value = f.get(obj);
-            if (value == null) {
-                SerializerFactory.GetSerializer(null).WriteObject(null, outStream);
-            } else {
-                if (value instanceof IGaeaSerializer) {
-                    ((IGaeaSerializer) value).Serialize(outStream);
-                } else {
-                    Class valueType = value.getClass();
-                    outStream.WriteInt32(TypeHelper.GetTypeId(valueType));
-                    SerializerFactory.GetSerializer(valueType).WriteObject(value, outStream);
-                }
-            }
+        for (FieldAccessor accessor : typeInfo.Accessors) {
+            accessor.write(obj, outStream);
         }
     }
 
@@ -104,56 +96,64 @@ public class ObjectSerializer extends SerializerBase {
             throw new ClassNoMatchException("Class not match!class:" + type.getName() + ",require " + defType.getName());
         }
         //读取1 byte
-        byte isRef = (byte) inStream.read();
+        byte isRef = inStream.ReadByte();
         //读取4 byte
         int hashcode = inStream.ReadInt32();
         if (isRef > 0) {
             return inStream.GetRef(hashcode);
         }
         TypeInfo typeInfo = GetTypeInfo(type);
-        Object obj = type.newInstance();
+        Object obj = typeInfo.newInstance(type);
+        //先登记引用,字段中循环引用到自身时可以找到该对象
+        inStream.SetRef(hashcode, obj);
         //这里的Fields必须是按照hashcode值从小到大排序，这样才能对应上
-        for (Field f : typeInfo.Fields) {
-            //继续读取4 bytes
-            int ptypeId = inStream.ReadInt32();
-            if (ptypeId == 0) {
-                f.set(obj, null);
-                continue;
-            }
-            Class ptype = TypeHelper.GetType(ptypeId);
-            if (ptype == null) {
-                throw new ClassNotFoundException("Cannot find class with typId,target class: " + f.getType().getName() + ",typeId:" + ptypeId);
-            }
-            //TODO renjia IGaeaSerializer接口尚未实现
-            if (IGaeaSerializer.class.isAssignableFrom(ptype)) {
-                IGaeaSerializer value = (IGaeaSerializer) ptype.newInstance();
-                value.Derialize(inStream);
-                f.set(obj, value);
-            } else {
-                Object value = SerializerFactory.GetSerializer(ptype).ReadObject(inStream, f.getType());
-                f.set(obj, value);
+        FieldAccessor[] accessors = typeInfo.Accessors;
+        int fieldCount = accessors.length;
+        for (int i = 0; i < fieldCount; i++) {
+            //#开头的字段排在最后,旧版本的发送方没有该字段时数据已经读完,保留默认值
+            if (i == fieldCount - 1 && typeInfo.HasTail && inStream.available() <= 0) {
+                break;
             }
+            accessors[i].read(obj, inStream);
         }
-        //TODO renjia 这里不会撑爆吗？
-        inStream.SetRef(hashcode, obj);
         return obj;
     }
-    private static Map<Class<?>, TypeInfo> TypeInfoMap = new HashMap<Class<?>, TypeInfo>();
+    /**
+     * 类型的字段结构缓存,TypeInfo创建完整后才发布,发布后不再修改
+     */
+    private static final ConcurrentHashMap<Class<?>, TypeInfo> TypeInfoMap = new ConcurrentHashMap<Class<?>, TypeInfo>();
 
     public static final Map<Class<?>, TypeInfo> getTypeInfoMap(){
         return TypeInfoMap;
     }
 
-    private TypeInfo GetTypeInfo(Class<?> type) throws ClassNotFoundException, DisallowedSerializeException {
-        if (TypeInfoMap.containsKey(type)) {
-            return TypeInfoMap.get(type);
+    /**
+     * 预先计算type的字段结构,启动时调用可避免首次请求时的延迟
+     */
+    public static void WarmUp(Class<?> type) throws Exception {
+        GetTypeInfo(type);
+    }
+
+    private static TypeInfo GetTypeInfo(Class<?> type) throws Exception {
+        TypeInfo typeInfo = TypeInfoMap.get(type);
+        if (typeInfo == null) {
+            //并发首次访问时可能重复计算,只有先放入的会被使用
+            typeInfo = CreateTypeInfo(type);
+            TypeInfo old = TypeInfoMap.putIfAbsent(type, typeInfo);
+            if (old != null) {
+                typeInfo = old;
+            }
         }
+        return typeInfo;
+    }
+
+    private static TypeInfo CreateTypeInfo(Class<?> type) throws Exception {
         GaeaSerializable cAnn = type.getAnnotation(GaeaSerializable.class);
         if (cAnn == null) {
             throw new DisallowedSerializeException();
         }
         int typeId = TypeHelper.GetTypeId(type);
-        TypeInfo typeInfo = new TypeInfo(typeId);
+        boolean hasTail = false;
         ArrayList<Field> fields = new ArrayList<Field>();
         Class temType = type;
         while (true) {
@@ -201,6 +201,7 @@ public class ObjectSerializer extends SerializerBase {
                 Integer indexId = 0;
                 if(name.startsWith("#")){
                     indexId = Integer.MAX_VALUE;
+                    hasTail = true;
                 }else{
                     indexId = StrHelper.GetHashcode(name.toLowerCase());
                 }
@@ -209,31 +210,66 @@ public class ObjectSerializer extends SerializerBase {
             }
         }
         //从小到大的顺序排序
-        int len = indexIds.size();
-        for (int i = 0; i < len; i++) {
-            for (int j = i + 1; j < len; j++) {
-                Integer item = indexIds.get(j);
-                if (indexIds.get(i).intValue() > item.intValue()) {
-                    indexIds.set(j, indexIds.get(i));
-                    indexIds.set(i, item);
-                }
-            }
-        }
+        Collections.sort(indexIds);
         //按index从小到大的顺序添加Field
-        for (Integer index : indexIds) {
-            typeInfo.Fields.add(mapFildes.get(index));
+        List<Field> sorted = new ArrayList<Field>(indexIds.size());
+        FieldAccessor[] accessors = new FieldAccessor[indexIds.size()];
+        for (int i = 0; i < accessors.length; i++) {
+            Field f = mapFildes.get(indexIds.get(i));
+            sorted.add(f);
+            accessors[i] = FieldAccessor.create(f);
         }
-        TypeInfoMap.put(type, typeInfo);
-        return typeInfo;
+        Constructor<?> creator = null;
+        try {
+            creator = type.getDeclaredConstructor();
+            creator.setAccessible(true);
+        } catch (NoSuchMethodException ex) {
+            //没有无参构造函数时仍由newInstance()抛出原来的异常
+        }
+        return new TypeInfo(typeId, sorted, accessors, hasTail, cAnn.reference(), creator);
     }
 }
 
-class TypeInfo {
+/**
+ * 类型的字段结构,创建后不可修改,可在多线程间共享
+ */
+final class TypeInfo {
+
+    public final int TypeId;
+    /**
+     * 按字段名hashcode从小到大排序的字段
+     */
+    public final List<Field> Fields;
+    /**
+     * 与Fields一一对应的字段读写器
+     */
+    public final FieldAccessor[] Accessors;
+    /**
+     * 是否有#开头的字段(排在最后)
+     */
+    public final boolean HasTail;
+    /**
+     * 是否对该类型的对象做引用跟踪,见GaeaSerializable.reference()
+     */
+    public final boolean Reference;
+    /**
+     * 缓存的无参构造函数
+     */
+    private final Constructor<?> creator;
 
-    public int TypeId;
+    public TypeInfo(int typeId, List<Field> fields, FieldAccessor[] accessors, boolean hasTail, boolean reference, Constructor<?> creator) {
+        this.TypeId = typeId;
+        this.Fields = Collections.unmodifiableList(fields);
+        this.Accessors = accessors;
+        this.HasTail = hasTail;
+        this.Reference = reference;
+        this.creator = creator;
+    }
 
-    public TypeInfo(int typeId) {
-        TypeId = typeId;
+    public Object newInstance(Class<?> type) throws Exception {
+        if (creator == null) {
+            return type.newInstance();
+        }
+        return creator.newInstance();
     }
-    public List<Field> Fields = new ArrayList<Field>();
 }
@@ -27,6 +27,7 @@ import com.bj58.spat.gaea.serializer.component.helper.ClassHelper;
 import com.bj58.spat.gaea.serializer.serializer.IGaeaSerializer;
 import org.apache.log4j.Logger;
 
+import java.io.OutputStream;
 import java.nio.charset.Charset;
 
 /**
@@ -66,8 +67,48 @@ public class Serializer {
         JarPath = jarPath;
         TypeMap.InitTypeMap();
     }
+    /**
+     * 预先计算扫描到的GaeaSerializable类型的字段结构,避免首次序列化这些类型时的延迟
+     * 异步扫描(gaea.serializer.scantype=asyn)时只处理调用时已扫描到的类型,其余类型在首次使用时计算
+     */
+    public static void WarmUp() {
+        int count = 0;
+        for (Class type : TypeMap.getCustomTypes()) {
+            if (type.isEnum() || type.isInterface()) {
+                continue;
+            }
+            try {
+                ObjectSerializer.WarmUp(type);
+                count++;
+            } catch (Exception ex) {
+                logger.warn("warm up type info failed,type:" + type.getName(), ex);
+            }
+        }
+        logger.info("warm up type info completed,count:" + count);
+    }
+
+    /**
+     * <pre>
+     * 是否对元素类型相同的List/Map只写一次元素类型(同构集合编码)。
+     * 旧版本无法解析该编码,需要通信双方都升级后才能开启,默认关闭,可用vm参数gaea.serializer.homogeneous=true开启。
+     * 无论是否开启,都能解析同构集合编码。
+     * </pre>
+     */
+    static volatile boolean HomogeneousCollection = Boolean.getBoolean("gaea.serializer.homogeneous");
+
+    public static void setHomogeneousCollection(boolean enabled) {
+        HomogeneousCollection = enabled;
+    }
+
     private Charset _Encoder = Charset.forName("UTF-8");
 
+    private static final int INIT_BUFFER_SIZE = 1024;
+    private static final int MAX_POOLED_BUFFER = 1024 * 256;
+    /**
+     * 每个线程复用一个输出流,避免每次序列化都重新分配缓冲区和引用池
+     */
+    private static final ThreadLocal<GaeaOutStream> STREAM_POOL = new ThreadLocal<GaeaOutStream>();
+
 
     public Serializer() {
         
@@ -82,29 +123,68 @@ public class Serializer {
      * @param   obj     要序列化的对象
      */
     public byte[] Serialize(Object obj) throws Exception {
-        GaeaOutStream stream = null;
+        GaeaOutStream stream = borrowStream();
         try {
-            stream = new GaeaOutStream();
-            stream.Encoder = _Encoder;
-            if (obj == null) {
-                SerializerFactory.GetSerializer(null).WriteObject(obj, stream);
-            } else {
-                Class type = obj.getClass();
-                if (obj instanceof IGaeaSerializer) {
-                    ((IGaeaSerializer) obj).Serialize(stream);
-                } else {
-                    SerializerFactory.GetSerializer(type).WriteObject(obj, stream);
-                }
-            }
-            byte[] result = stream.toByteArray();
-            return result;
+            write(obj, stream);
+            return stream.toByteArray();
         } finally {
-            if (stream != null) {
-                stream.close();
+            returnStream(stream);
+        }
+    }
+
+    /*
+     * 序列化后直接写入out,省去toByteArray()的复制
+     * @return  写入的字节数
+     * @param   obj     要序列化的对象
+     */
+    public int Serialize(Object obj, OutputStream out) throws Exception {
+        GaeaOutStream stream = borrowStream();
+        try {
+            write(obj, stream);
+            stream.writeTo(out);
+            return stream.size();
+        } finally {
+            returnStream(stream);
+        }
+    }
+
+    private void write(Object obj, GaeaOutStream stream) throws Exception {
+        stream.Encoder = _Encoder;
+        if (obj == null) {
+            SerializerFactory.GetSerializer(null).WriteObject(obj, stream);
+        } else {
+            Class type = obj.getClass();
+            if (obj instanceof IGaeaSerializer) {
+                ((IGaeaSerializer) obj).Serialize(stream);
+            } else {
+                SerializerFactory.GetSerializer(type).WriteObject(obj, stream);
             }
         }
     }
 
+    /**
+     * 取出当前线程缓存的输出流,取出后置空,嵌套调用时会新建流而不会复用同一个
+     */
+    private static GaeaOutStream borrowStream() {
+        GaeaOutStream stream = STREAM_POOL.get();
+        if (stream == null) {
+            return new GaeaOutStream(INIT_BUFFER_SIZE);
+        }
+        STREAM_POOL.set(null);
+        return stream;
+    }
+
+    /**
+     * 重置后放回当前线程,缓冲区过大时丢弃,避免每个线程长期占用大块内存
+     */
+    private static void returnStream(GaeaOutStream stream) {
+        if (stream.getBuffer().length > MAX_POOLED_BUFFER) {
+            return;
+        }
+        stream.reset();
+        STREAM_POOL.set(stream);
+    }
+
     /**
      *如果type继承了IGaeaSerializer接口，则使用type自身的Derialize()方法进行反序列化。
      * @param buffer 要反序列化的字节数组
@@ -20,6 +20,10 @@
  */
 package com.bj58.spat.gaea.serializer.serializer;
 
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.bj58.spat.gaea.serializer.component.GaeaOutStream;
+import com.bj58.spat.gaea.serializer.component.TypeMap;
 import com.bj58.spat.gaea.serializer.component.exception.DisallowedSerializeException;
 import com.bj58.spat.gaea.serializer.component.helper.TypeHelper;
 import com.bj58.spat.gaea.serializer.serializer.ArraySerializer;
@@ -69,6 +73,27 @@ class SerializerFactory {
     private final static SerializerBase nullSerializer = new NullSerializer();
     private final static SerializerBase objectSerializer = new ObjectSerializer();
     private final static SerializerBase stringSerializer = new StringSerializer();
+    /**
+     * 具体类型与序列化类的对应关系
+     */
+    private final static ConcurrentHashMap<Class<?>, SerializerBase> serializerMap = new ConcurrentHashMap<Class<?>, SerializerBase>();
+    /**
+     * 具体类型与typeId、序列化类的对应关系,仅缓存允许序列化的类型
+     */
+    private final static ConcurrentHashMap<Class<?>, TypeEntry> entryMap = new ConcurrentHashMap<Class<?>, TypeEntry>();
+
+    private static volatile int cacheVersion = TypeMap.getVersion();
+
+    private final static class TypeEntry {
+
+        final int typeId;
+        final SerializerBase serializer;
+
+        TypeEntry(int typeId, SerializerBase serializer) {
+            this.typeId = typeId;
+            this.serializer = serializer;
+        }
+    }
 
     /**
      * 根据type获取到对应的序列化类
@@ -80,10 +105,52 @@ class SerializerFactory {
     public static SerializerBase GetSerializer(Class<?> type) throws ClassNotFoundException, DisallowedSerializeException {
         if (type == null) {
             return nullSerializer;
-        } else if (type.isEnum()) {
-            return enumSerializer;
         }
-        int typeId = TypeHelper.GetTypeId(type);
+        CheckVersion();
+        SerializerBase serializer = serializerMap.get(type);
+        if (serializer == null) {
+            serializer = type.isEnum() ? enumSerializer : GetSerializer(TypeHelper.GetTypeId(type));
+            serializerMap.put(type, serializer);
+        }
+        return serializer;
+    }
+
+    /**
+     * 写入value的typeId及内容,typeId和序列化类只查找一次
+     * @param value
+     * @param outStream
+     * @throws Exception
+     */
+    public static void WriteObjectWithType(Object value, GaeaOutStream outStream) throws Exception {
+        if (value == null) {
+            nullSerializer.WriteObject(null, outStream);
+            return;
+        }
+        CheckVersion();
+        Class<?> type = value.getClass();
+        TypeEntry entry = entryMap.get(type);
+        if (entry == null) {
+            int typeId = TypeHelper.GetTypeId(type);
+            entry = new TypeEntry(typeId, GetSerializer(type));
+            entryMap.put(type, entry);
+        }
+        outStream.WriteInt32(entry.typeId);
+        entry.serializer.WriteObject(value, outStream);
+    }
+
+    /**
+     * 类型表重新初始化(如热部署)后清空缓存,保证自定义类型重新登记到类型表
+     */
+    private static void CheckVersion() {
+        int version = TypeMap.getVersion();
+        if (version != cacheVersion) {
+            serializerMap.clear();
+            entryMap.clear();
+            cacheVersion = version;
+        }
+    }
+
+    private static SerializerBase GetSerializer(int typeId) {
         SerializerBase serializer = null;
         switch (typeId) {
             case 0://未知
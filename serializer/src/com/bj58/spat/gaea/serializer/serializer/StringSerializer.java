@@ -22,8 +22,6 @@ package com.bj58.spat.gaea.serializer.serializer;
 
 import com.bj58.spat.gaea.serializer.component.GaeaInStream;
 import com.bj58.spat.gaea.serializer.component.GaeaOutStream;
-import com.bj58.spat.gaea.serializer.component.exception.StreamException;
-import com.bj58.spat.gaea.serializer.component.helper.ByteHelper;
 import com.bj58.spat.gaea.serializer.component.helper.StrHelper;
 import com.bj58.spat.gaea.serializer.serializer.SerializerBase;
 
@@ -36,23 +34,24 @@ import java.io.IOException;
  */
 class StringSerializer extends SerializerBase {
 
+    /**
+     * 长度不小于该值的字符串才放入引用池,短字符串重复引用的收益不抵查找的开销
+     */
+    static final int REF_MIN_LENGTH = 32;
+
     @Override
     public void WriteObject(Object obj, GaeaOutStream outStream) throws IOException {
-        if (outStream.WriteRef(obj)) {
+        String str = obj.toString();
+        if (outStream.WriteRef(obj, str.length() >= REF_MIN_LENGTH)) {
             return;
         }
-        byte[] buffer = obj.toString().getBytes(outStream.Encoder);
-        byte[] bLen = ByteHelper.GetBytesFromInt32(buffer.length);
-        byte[] bytes = new byte[buffer.length + 4];
-        System.arraycopy(bLen, 0, bytes, 0, 4);
-        System.arraycopy(buffer, 0, bytes, 4, buffer.length);
-        outStream.write(bytes);
+        outStream.WriteString(str);
     }
 
     @Override
     public Object ReadObject(GaeaInStream inStream, Class defType) throws Exception {
         //获取1个字节isRef
-        int isRef = (byte) inStream.read();
+        int isRef = inStream.ReadByte();
         //继续读取4个字节
         int hashcode = inStream.ReadInt32();
         if (isRef > 0) {
@@ -63,18 +62,13 @@ class StringSerializer extends SerializerBase {
             return obj;
         }
         //获取字节的长度
-        int len = inStream.ReadInt32();
-        if (len > inStream.MAX_DATA_LEN) {
-            throw new StreamException("Data length overflow.");
-        }
+        int len = inStream.ReadLength();
         if (len == 0) {
             inStream.SetRef(hashcode, StrHelper.EmptyString);
             return StrHelper.EmptyString;
         }
-        byte[] buffer = new byte[len];
-        //读取到的字节的数量必须和buffer的相同，否则会抛出异常
-        inStream.SafeRead(buffer);
-        String str = new String(buffer, inStream.Encoder);
+        //剩余的字节数必须不小于len，否则会抛出异常
+        String str = inStream.ReadString(len);
         //TODO renjia
         inStream.SetRef(hashcode, str);
         return str;
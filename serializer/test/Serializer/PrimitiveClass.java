@@ -0,0 +1,64 @@
+package Serializer;
+
+import com.bj58.spat.gaea.serializer.component.annotation.GaeaMember;
+import com.bj58.spat.gaea.serializer.component.annotation.GaeaSerializable;
+
+/**
+ * 
+ * @author Service Platform Architecture Team (spat@58.com)
+ */
+@GaeaSerializable(name = "PrimitiveClass")
+public class PrimitiveClass {
+
+	public PrimitiveClass() {
+	}
+
+	@GaeaMember
+	public int intValue;
+	@GaeaMember
+	public long longValue;
+	@GaeaMember
+	public short shortValue;
+	@GaeaMember
+	public byte byteValue;
+	@GaeaMember
+	public char charValue;
+	@GaeaMember
+	public boolean boolValue;
+	@GaeaMember
+	public float floatValue;
+	@GaeaMember
+	public double doubleValue;
+	@GaeaMember
+	public Integer boxedInt;
+	@GaeaMember
+	public Long boxedLong;
+	@GaeaMember
+	public Character boxedChar;
+	@GaeaMember
+	public Double boxedDouble;
+	@GaeaMember
+	public Integer nullInt;
+	@GaeaMember
+	public String nullText;
+	@GaeaMember
+	public String text;
+
+	public static PrimitiveClass Get() {
+		PrimitiveClass pc = new PrimitiveClass();
+		pc.intValue = -123456;
+		pc.longValue = 1234567890123L;
+		pc.shortValue = -2;
+		pc.byteValue = (byte) 0xf0;
+		pc.charValue = '中';
+		pc.boolValue = true;
+		pc.floatValue = -1.5f;
+		pc.doubleValue = Math.PI;
+		pc.boxedInt = 7;
+		pc.boxedLong = -8L;
+		pc.boxedChar = 'z';
+		pc.boxedDouble = 0.25;
+		pc.text = "gaea";
+		return pc;
+	}
+}
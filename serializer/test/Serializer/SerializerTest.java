@@ -2,18 +2,29 @@ package Serializer;
 
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import java.io.ByteArrayOutputStream;
 import java.lang.reflect.Array;
+import java.lang.reflect.Field;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 
 import org.junit.Test;
 
+import com.bj58.spat.gaea.serializer.component.GaeaInStream;
+import com.bj58.spat.gaea.serializer.component.GaeaOutStream;
+import com.bj58.spat.gaea.serializer.component.exception.StreamException;
+import com.bj58.spat.gaea.serializer.component.helper.ByteHelper;
 import com.bj58.spat.gaea.serializer.serializer.Serializer;
 
 /**
@@ -62,6 +73,7 @@ public class SerializerTest {
 		assertNotNull(expect);
 	}
 
+	@Test
 	public void TestEqualObject() throws Exception {
 		Serializer serializer = new Serializer();
 		List<SimpleClass> scs = new ArrayList<SimpleClass>();
@@ -258,4 +270,257 @@ public class SerializerTest {
 
 		ArrayList[] abc = (ArrayList[]) obj;
 	}
+
+	@Test
+	public void TestStreamReuse() throws Exception {
+		Serializer serializer = new Serializer();
+		List data = new ArrayList();
+		for (int i = 0; i < 1000; i++) {
+			data.add("item" + i);
+		}
+		byte[] buffer1 = serializer.Serialize(data);
+		byte[] buffer2 = serializer.Serialize(data);
+		assertArrayEquals(buffer1, buffer2);
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		int len = serializer.Serialize(data, out);
+		assertEquals(buffer1.length, len);
+		assertArrayEquals(buffer1, out.toByteArray());
+		assertEquals(data, serializer.Derialize(out.toByteArray(), ArrayList.class));
+	}
+
+	@Test
+	public void TestHomogeneousCollection() throws Exception {
+		Serializer serializer = new Serializer();
+		List<Long> list = new ArrayList<Long>();
+		Map<String, String> map = new HashMap<String, String>();
+		for (int i = 0; i < 100; i++) {
+			list.add((long) i);
+			map.put("key" + i, "value" + i);
+		}
+		Serializer.setHomogeneousCollection(true);
+		try {
+			assertEquals(list, serializer.Derialize(serializer.Serialize(list), List.class));
+			assertEquals(map, serializer.Derialize(serializer.Serialize(map), Map.class));
+		} finally {
+			Serializer.setHomogeneousCollection(false);
+		}
+	}
+
+	@Test
+	public void TestRefIds() throws Exception {
+		GaeaInStream stream = new GaeaInStream(new byte[0]);
+		Object big = new Object();
+		stream.SetRef(1001 + (1 << 19), big);
+		for (int i = 0; i < 100; i++) {
+			stream.SetRef(1001 + i, "ref" + i);
+		}
+		stream.SetRef(5, "small");
+		assertEquals(big, stream.GetRef(1001 + (1 << 19)));
+		assertEquals("small", stream.GetRef(5));
+		for (int i = 0; i < 100; i++) {
+			assertEquals("ref" + i, stream.GetRef(1001 + i));
+		}
+		assertNull(stream.GetRef(1001 + 100));
+		assertNull(stream.GetRef(0));
+
+		//不连续的大ID不能让_Refs按ID分配数组
+		Field refs = GaeaInStream.class.getDeclaredField("_Refs");
+		refs.setAccessible(true);
+		assertTrue(((Object[]) refs.get(stream)).length <= 256);
+	}
+
+	@Test
+	public void TestCorruptLength() throws Exception {
+		Serializer serializer = new Serializer();
+		List list = new ArrayList();
+		list.add("a");
+		list.add("b");
+		Map map = new HashMap();
+		map.put("a", "b");
+		Object[] values = new Object[] { list, map };
+		Class[] types = new Class[] { List.class, Map.class };
+		for (int i = 0; i < values.length; i++) {
+			byte[] buffer = serializer.Serialize(values[i]);
+			//typeId(4)+isRef(1)+hashcode(4)之后是元素个数,改为剩余数据不可能容纳的长度
+			int len = 10000000;
+			buffer[9] = (byte) len;
+			buffer[10] = (byte) (len >> 8);
+			buffer[11] = (byte) (len >> 16);
+			buffer[12] = (byte) (len >> 24);
+			try {
+				serializer.Derialize(buffer, types[i]);
+				fail("corrupt length should be rejected");
+			} catch (StreamException ex) {
+			}
+		}
+	}
+
+	private static void assertUtf8(Serializer serializer, String str) throws Exception {
+		GaeaOutStream outStream = new GaeaOutStream();
+		outStream.WriteString(str);
+		byte[] buffer = outStream.toByteArray();
+		byte[] expect = str.getBytes("UTF-8");
+		assertEquals(expect.length, ByteHelper.ToInt32(buffer));
+		assertArrayEquals(expect, Arrays.copyOfRange(buffer, 4, buffer.length));
+		//未配对的代理字符与String.getBytes一样解码为'?'
+		assertEquals(new String(expect, "UTF-8"), serializer.Derialize(serializer.Serialize(str), String.class));
+	}
+
+	@Test
+	public void TestWriteStringUtf8() throws Exception {
+		Serializer serializer = new Serializer();
+		String[] values = new String[] { "", "hello gaea", "中文测试\u00c0\u00e9\u20ac\u07ff\u0800\uffff",
+				"a\ud83d\ude00b\ud834\udd1e", "x\ud800y", "\udc00", "end\ud83d", "\ude00\ud83d" };
+		for (String value : values) {
+			assertUtf8(serializer, value);
+		}
+
+		//超过4096个字符时先计算实际长度再分配
+		StringBuilder ascii = new StringBuilder();
+		StringBuilder mixed = new StringBuilder();
+		for (int i = 0; i < 5000; i++) {
+			ascii.append((char) ('a' + i % 26));
+			mixed.append(values[i % values.length]);
+		}
+		assertUtf8(serializer, ascii.toString());
+		assertUtf8(serializer, mixed.toString());
+		assertUtf8(serializer, ascii.toString() + "\u4e2d\ud83d\ude00");
+
+		Random random = new Random(20);
+		char[] pool = new char[] { 'a', 'Z', '0', '\u00e9', '\u07ff', '\u4e2d', '\ud83d', '\ude00', '\ud800', '\udfff', '\uffff' };
+		for (int i = 0; i < 20000; i++) {
+			char[] chars = new char[random.nextInt(i % 100 == 0 ? 6000 : 40)];
+			for (int j = 0; j < chars.length; j++) {
+				chars[j] = random.nextInt(4) == 0 ? (char) random.nextInt(0x10000) : pool[random.nextInt(pool.length)];
+			}
+			assertUtf8(serializer, new String(chars));
+		}
+	}
+
+	/**
+	 * 以下字节由修改前的序列化实现生成,字段读写器的编码必须保持一致
+	 */
+	private static final byte[] PRIMITIVE_CLASS_BYTES = new byte[] {
+		-45, -119, 96, 123, 0, -23, 3, 0, 0, 4, 0, 0, 0, 78, 45, 9, 0, 0, 0, 7, 0, 0, 0, 14, 0, 0, 0, 0, 0,
+		0, 0, 0, 0, -48, 63, 0, 0, 0, 0, 18, 0, 0, 0, 0, -22, 3, 0, 0, 4, 0, 0, 0, 103, 97, 101, 97, 13, 0,
+		0, 0, 0, 0, -64, -65, 11, 0, 0, 0, -53, 4, -5, 113, 31, 1, 0, 0, 0, 0, 0, 0, 4, 0, 0, 0, 0, 122, 7,
+		0, 0, 0, -2, -1, 3, 0, 0, 0, 1, 9, 0, 0, 0, -64, 29, -2, -1, 11, 0, 0, 0, -8, -1, -1, -1, -1, -1,
+		-1, -1, 14, 0, 0, 0, 24, 45, 68, 84, -5, 33, 9, 64, 5, 0, 0, 0, -16 };
+	private static final byte[] PRIMITIVE_CLASS_DEFAULT_BYTES = new byte[] {
+		-45, -119, 96, 123, 0, -23, 3, 0, 0, 4, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0,
+		0, 13, 0, 0, 0, 0, 0, 0, 0, 11, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 7, 0, 0,
+		0, 0, 0, 3, 0, 0, 0, 0, 9, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 14, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 5,
+		0, 0, 0, 0 };
+
+	@Test
+	public void TestPrimitiveFields() throws Exception {
+		Serializer serializer = new Serializer();
+		assertArrayEquals(PRIMITIVE_CLASS_BYTES, serializer.Serialize(PrimitiveClass.Get()));
+		assertArrayEquals(PRIMITIVE_CLASS_DEFAULT_BYTES, serializer.Serialize(new PrimitiveClass()));
+
+		PrimitiveClass pc = (PrimitiveClass) serializer.Derialize(PRIMITIVE_CLASS_BYTES, PrimitiveClass.class);
+		assertEquals(-123456, pc.intValue);
+		assertEquals(1234567890123L, pc.longValue);
+		assertEquals(-2, pc.shortValue);
+		assertEquals((byte) 0xf0, pc.byteValue);
+		assertEquals('中', pc.charValue);
+		assertTrue(pc.boolValue);
+		assertEquals(-1.5f, pc.floatValue, 0f);
+		assertEquals(Math.PI, pc.doubleValue, 0d);
+		assertEquals(Integer.valueOf(7), pc.boxedInt);
+		assertEquals(Long.valueOf(-8L), pc.boxedLong);
+		assertEquals(Character.valueOf('z'), pc.boxedChar);
+		assertEquals(Double.valueOf(0.25), pc.boxedDouble);
+		assertNull(pc.nullInt);
+		assertNull(pc.nullText);
+		assertEquals("gaea", pc.text);
+		assertArrayEquals(PRIMITIVE_CLASS_BYTES, serializer.Serialize(pc));
+
+		pc = (PrimitiveClass) serializer.Derialize(PRIMITIVE_CLASS_DEFAULT_BYTES, PrimitiveClass.class);
+		assertEquals(0, pc.intValue);
+		assertFalse(pc.boolValue);
+		assertNull(pc.boxedInt);
+		assertArrayEquals(PRIMITIVE_CLASS_DEFAULT_BYTES, serializer.Serialize(pc));
+	}
+
+	/**
+	 * 期望的字节由修改前的序列化实现生成,基本类型数组的批量编码必须保持一致
+	 */
+	@Test
+	public void TestPrimitiveArrays() throws Exception {
+		Serializer serializer = new Serializer();
+		Object[] values = new Object[] {
+				new int[] { 0, 1, -1, Integer.MAX_VALUE, Integer.MIN_VALUE },
+				new long[] { 0, -1, Long.MAX_VALUE, Long.MIN_VALUE, 1234567890123L },
+				new short[] { 0, -1, Short.MAX_VALUE, Short.MIN_VALUE },
+				new byte[] { 0, -1, 127, -128 },
+				//高位字节不为0的字符
+				new char[] { 'a', '\u00ff', '\u0100', '\u4e2d', '\uffff' },
+				new boolean[] { true, false, true },
+				new float[] { 0f, -1.5f, Float.NaN, Float.MAX_VALUE, Float.MIN_VALUE },
+				new double[] { 0d, -1.5d, Double.NaN, Double.MAX_VALUE, Math.PI },
+				new int[0],
+				new byte[0],
+				new char[0] };
+		byte[][] expects = new byte[][] {
+				new byte[] {
+				9, 0, 0, 0, 0, -23, 3, 0, 0, 5, 0, 0, 0, 0, 0, 0, 0, 1, 0, 0, 0, -1, -1, -1, -1, -1, -1, -1, 127,
+				0, 0, 0, -128 },
+				new byte[] {
+				11, 0, 0, 0, 0, -23, 3, 0, 0, 5, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, -1, -1, -1, -1, -1, -1, -1, -1,
+				-1, -1, -1, -1, -1, -1, -1, 127, 0, 0, 0, 0, 0, 0, 0, -128, -53, 4, -5, 113, 31, 1, 0, 0 },
+				new byte[] {
+				7, 0, 0, 0, 0, -23, 3, 0, 0, 4, 0, 0, 0, 0, 0, -1, -1, -1, 127, 0, -128 },
+				new byte[] {
+				5, 0, 0, 0, 0, -23, 3, 0, 0, 4, 0, 0, 0, 0, -1, 127, -128 },
+				new byte[] {
+				4, 0, 0, 0, 0, -23, 3, 0, 0, 5, 0, 0, 0, 0, 97, 0, -1, 1, 0, 78, 45, -1, -1 },
+				new byte[] {
+				3, 0, 0, 0, 0, -23, 3, 0, 0, 3, 0, 0, 0, 1, 0, 1 },
+				new byte[] {
+				13, 0, 0, 0, 0, -23, 3, 0, 0, 5, 0, 0, 0, 0, 0, 0, 0, 0, 0, -64, -65, 0, 0, -64, 127, -1, -1, 127,
+				127, 1, 0, 0, 0 },
+				new byte[] {
+				14, 0, 0, 0, 0, -23, 3, 0, 0, 5, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, -8, -65, 0, 0,
+				0, 0, 0, 0, -8, 127, -1, -1, -1, -1, -1, -1, -17, 127, 24, 45, 68, 84, -5, 33, 9, 64 },
+				new byte[] {
+				9, 0, 0, 0, 0, -23, 3, 0, 0, 0, 0, 0, 0 },
+				new byte[] {
+				5, 0, 0, 0, 0, -23, 3, 0, 0, 0, 0, 0, 0 },
+				new byte[] {
+				4, 0, 0, 0, 0, -23, 3, 0, 0, 0, 0, 0, 0 } };
+		for (int i = 0; i < values.length; i++) {
+			byte[] buffer = serializer.Serialize(values[i]);
+			assertArrayEquals(expects[i], buffer);
+			Object value = serializer.Derialize(buffer, values[i].getClass());
+			assertEquals(Array.getLength(values[i]), Array.getLength(value));
+			for (int j = 0; j < Array.getLength(value); j++) {
+				assertEquals(Array.get(values[i], j), Array.get(value, j));
+			}
+			if (buffer.length > 13) {
+				//数据不完整时抛出StreamException
+				try {
+					serializer.Derialize(Arrays.copyOf(buffer, buffer.length - 1), values[i].getClass());
+					fail("truncated " + values[i].getClass().getSimpleName() + " should be rejected");
+				} catch (StreamException ex) {
+				}
+			}
+		}
+
+		//基本类型数组不登记引用,同一实例重复出现时仍按新对象写入
+		int[] shared = new int[] { 1, 2 };
+		byte[] buffer = serializer.Serialize(new Object[] { shared, shared, new int[] { 1, 2 } });
+		assertArrayEquals(new byte[] {
+		2, 0, 0, 0, 0, -23, 3, 0, 0, 3, 0, 0, 0, 23, 0, 0, 0, 9, 0, 0, 0, 0, -22, 3, 0, 0, 2, 0, 0, 0, 1,
+		0, 0, 0, 2, 0, 0, 0, 23, 0, 0, 0, 9, 0, 0, 0, 0, -21, 3, 0, 0, 2, 0, 0, 0, 1, 0, 0, 0, 2, 0, 0, 0,
+		23, 0, 0, 0, 9, 0, 0, 0, 0, -20, 3, 0, 0, 2, 0, 0, 0, 1, 0, 0, 0, 2, 0, 0, 0 }, buffer);
+		Object[] array = (Object[]) serializer.Derialize(buffer, Object[].class);
+		assertEquals(3, array.length);
+		for (Object item : array) {
+			assertEquals(2, Array.getLength(item));
+			assertEquals(1, ((Number) Array.get(item, 0)).intValue());
+			assertEquals(2, ((Number) Array.get(item, 1)).intValue());
+		}
+	}
 }
@@ -31,5 +31,6 @@ public class SerializerClassInit implements IInit {
 	@Override
 	public void init() {
 		new Serializer();
+		Serializer.WarmUp();
 	}
 }
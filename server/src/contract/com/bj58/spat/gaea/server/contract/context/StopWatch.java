@@ -63,6 +63,13 @@ public class StopWatch {
 		mapCounter.put(key, new PerformanceCounter(key, description, System.currentTimeMillis()));
 	}
 	
+	/**
+	 * description在读取时才调用toString,不需要时不拼接字符串
+	 */
+	public void startNew(String key, Object description) {
+		mapCounter.put(key, new PerformanceCounter(key, description, System.currentTimeMillis()));
+	}
+	
 	public void stop(String key) {
 		PerformanceCounter pc = mapCounter.get(key);
 		if(pc != null) {
@@ -74,7 +81,7 @@ public class StopWatch {
 	public class PerformanceCounter {
 		
 		private String key;
-		private String description;
+		private Object description;
 		private long startTime;
 		private long endTime;
 		
@@ -82,9 +89,9 @@ public class StopWatch {
 			
 		}
 		
-		public PerformanceCounter(String key, String description, long startTime) {
+		public PerformanceCounter(String key, Object description, long startTime) {
 			this.setKey(key);
-			this.setDescription(description);
+			this.description = description;
 			this.setStartTime(startTime);
 		}
 		
@@ -100,7 +107,7 @@ public class StopWatch {
 			this.key = key;
 		}
 		public String getDescription() {
-			return description;
+			return description == null ? null : description.toString();
 		}
 		public void setDescription(String description) {
 			this.description = description;
@@ -121,4 +121,14 @@ public interface ILog {
     * @param t the exception
     */
    void fatal(String message, Throwable t);
+
+   /**
+    * @return debug级别是否开启,拼接日志内容前先判断
+    */
+   boolean isDebugEnabled();
+
+   /**
+    * @return info级别是否开启
+    */
+   boolean isInfoEnabled();
 }
\ No newline at end of file
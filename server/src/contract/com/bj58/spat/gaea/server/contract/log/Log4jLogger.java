@@ -68,6 +68,23 @@ public final class Log4jLogger implements ILog {
 		return sbLog.toString();
 	}
 
+	/**
+	 * 级别未开启时不拼接日志内容
+	 */
+	private void log(Level level, String msg, Throwable t) {
+		if(logger.isEnabledFor(level)) {
+			logger.log(FQCN, level, getLogMsg(msg), t);
+		}
+	}
+
+	public boolean isDebugEnabled() {
+		return logger.isDebugEnabled();
+	}
+
+	public boolean isInfoEnabled() {
+		return logger.isInfoEnabled();
+	}
+
 
 
 	/**
@@ -77,7 +94,7 @@ public final class Log4jLogger implements ILog {
 	 *            the message to log.
 	 */
 	public void fine(String message) {
-		logger.log(FQCN, Level.DEBUG, getLogMsg(message), null);
+		log(Level.DEBUG, message, null);
 	}
 
 	/**
@@ -87,7 +104,7 @@ public final class Log4jLogger implements ILog {
 	 *            the message to log
 	 */
 	public void config(String message) {
-		logger.log(FQCN, Level.DEBUG, getLogMsg(message), null);
+		log(Level.DEBUG, message, null);
 	}
 
 	/**
@@ -97,7 +114,7 @@ public final class Log4jLogger implements ILog {
 	 *            the message to log
 	 */
 	public void info(String message) {
-		logger.log(FQCN, Level.INFO, getLogMsg(message), null);
+		log(Level.INFO, message, null);
 	}
 
 	/**
@@ -107,7 +124,7 @@ public final class Log4jLogger implements ILog {
 	 *            the message to log
 	 */
 	public void warning(String message) {
-		logger.log(FQCN, Level.WARN, getLogMsg(message), null);
+		log(Level.WARN, message, null);
 	}
 
 	// ****************************************************
@@ -121,7 +138,7 @@ public final class Log4jLogger implements ILog {
 	 *            the message to log
 	 */
 	public void debug(String message) {
-		logger.log(FQCN, Level.DEBUG, getLogMsg(message), null);
+		log(Level.DEBUG, message, null);
 	}
 
 	/**
@@ -133,7 +150,7 @@ public final class Log4jLogger implements ILog {
 	 *            the exception
 	 */
 	public void fatal(String message, Throwable t) {
-		logger.log(FQCN, Level.FATAL, getLogMsg(message), t);
+		log(Level.FATAL, message, t);
 	}
 
 	/**
@@ -145,7 +162,7 @@ public final class Log4jLogger implements ILog {
 	 *            the exception
 	 */
 	public void debug(String message, Throwable t) {
-		logger.log(FQCN, Level.DEBUG, getLogMsg(message), t);
+		log(Level.DEBUG, message, t);
 	}
 
 	/**
@@ -157,7 +174,7 @@ public final class Log4jLogger implements ILog {
 	 *            the exception
 	 */
 	public void info(String message, Throwable t) {
-		logger.log(FQCN, Level.INFO, getLogMsg(message), t);
+		log(Level.INFO, message, t);
 	}
 
 	/**
@@ -167,7 +184,7 @@ public final class Log4jLogger implements ILog {
 	 *            the message to log
 	 */
 	public void warn(String message) {
-		logger.log(FQCN, Level.WARN, getLogMsg(message), null);
+		log(Level.WARN, message, null);
 	}
 
 	/**
@@ -179,7 +196,7 @@ public final class Log4jLogger implements ILog {
 	 *            the exception
 	 */
 	public void warn(String message, Throwable t) {
-		logger.log(FQCN, Level.WARN, getLogMsg(message), t);
+		log(Level.WARN, message, t);
 	}
 
 	/**
@@ -189,7 +206,7 @@ public final class Log4jLogger implements ILog {
 	 *            the message to log
 	 */
 	public void error(String message) {
-		logger.log(FQCN, Level.ERROR, getLogMsg(message), null);
+		log(Level.ERROR, message, null);
 	}
 
 	/**
@@ -201,11 +218,11 @@ public final class Log4jLogger implements ILog {
 	 *            the exception
 	 */
 	public void error(String message, Throwable t) {
-		logger.log(FQCN, Level.ERROR, getLogMsg(message), t);
+		log(Level.ERROR, message, t);
 	}
 
 	public void error(Throwable e) {
-		logger.log(FQCN, Level.ERROR, getLogMsg(""), e);
+		log(Level.ERROR, "", e);
 	}
 
 	/**
@@ -215,7 +232,7 @@ public final class Log4jLogger implements ILog {
 	 *            the message to log
 	 */
 	public void fatal(String message) {
-		logger.log(FQCN, Level.FATAL, getLogMsg(message), null);
+		log(Level.FATAL, message, null);
 	}
 
 }
@@ -20,6 +20,8 @@
  */
 package com.bj58.spat.gaea.server.core.proxy;
 
+import java.util.concurrent.TimeoutException;
+
 import com.bj58.spat.gaea.protocol.sdp.RequestProtocol;
 import com.bj58.spat.gaea.protocol.sfp.v1.Protocol;
 import com.bj58.spat.gaea.server.contract.context.ExecFilterType;
@@ -32,6 +34,7 @@ import com.bj58.spat.gaea.server.contract.log.ILog;
 import com.bj58.spat.gaea.server.contract.log.LogFactory;
 import com.bj58.spat.gaea.server.util.ExceptionHelper;
 import com.bj58.spat.gaea.server.util.async.AsyncInvoker;
+import com.bj58.spat.gaea.server.util.async.AsyncTask;
 import com.bj58.spat.gaea.server.util.async.IAsyncHandler;
 
 /**
@@ -83,6 +86,7 @@ public class AsyncInvokerHandle extends InvokerBase {
 				}
 
 				if (context.isDoInvoke()) {
+					checkDeadline(context);
 					Global.getSingleton().getThreadLocal().set(context);
 					doInvoke(context);
 				}
@@ -160,4 +164,23 @@ public class AsyncInvokerHandle extends InvokerBase {
 			}
 		});
 	}
+
+	/**
+	 * 按请求中调用方剩余的等待时间设置任务的deadline,已经超过时不再执行
+	 * 
+	 * @param context
+	 * @throws TimeoutException
+	 */
+	private void checkDeadline(GaeaContext context) throws TimeoutException {
+		AsyncTask task = AsyncTask.current();
+		Protocol protocol = context.getGaeaRequest().getProtocol();
+		if (task == null || protocol == null || !(protocol.getSdpEntity() instanceof RequestProtocol)) {
+			return;
+		}
+		RequestProtocol request = (RequestProtocol) protocol.getSdpEntity();
+		task.setBudget(request.getTimeout());
+		if (task.isExpired()) {
+			throw new TimeoutException("caller deadline exceeded,drop task!timeout:" + request.getTimeout() + "ms");
+		}
+	}
 }
\ No newline at end of file
@@ -20,6 +20,9 @@
  */
 package com.bj58.spat.gaea.server.core.proxy;
 
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
 import com.bj58.spat.gaea.protocol.sdp.RequestProtocol;
 import com.bj58.spat.gaea.protocol.sdp.ResponseProtocol;
 import com.bj58.spat.gaea.protocol.sfp.v1.Protocol;
@@ -31,6 +34,7 @@ import com.bj58.spat.gaea.server.contract.context.GaeaResponse;
 import com.bj58.spat.gaea.server.contract.context.StopWatch;
 import com.bj58.spat.gaea.server.contract.log.ILog;
 import com.bj58.spat.gaea.server.contract.log.LogFactory;
+import com.bj58.spat.gaea.server.contract.log.RequestLog;
 import com.bj58.spat.gaea.server.util.ErrorState;
 import com.bj58.spat.gaea.server.util.ExceptionHelper;
 import com.bj58.spat.gaea.server.util.ServiceFrameException;
@@ -46,6 +50,31 @@ public abstract class InvokerBase implements IInvokerHandle {
 	 * log
 	 */
 	private final static ILog logger = LogFactory.getLogger(InvokerBase.class);
+	
+	/**
+	 * StopWatch的key(InvokeRealService_lookup.methodName),按lookup和methodName缓存,避免每次拼接
+	 */
+	private final static ConcurrentHashMap<String, ConcurrentHashMap<String, String>> swKeys = new ConcurrentHashMap<String, ConcurrentHashMap<String, String>>();
+	
+	/**
+	 * 每个lookup最多缓存的方法数
+	 */
+	private final static int MAX_METHOD_COUNT = 1024;
+	
+	static {
+		try {
+			int sample = Global.getSingleton().getServiceConfig().getInt("gaea.log.request.sample");
+			if (sample > 0) {
+				RequestLog.setSampleRate(sample);
+			}
+			int limit = Global.getSingleton().getServiceConfig().getInt("gaea.log.request.limit");
+			if (limit > 0) {
+				RequestLog.setMaxPerSecond(limit);
+			}
+		} catch (Exception ex) {
+			logger.info("gaea.log.request config not found,use default");
+		}
+	}
 
 	/**
 	 * 调用真实服务
@@ -55,38 +84,24 @@ public abstract class InvokerBase implements IInvokerHandle {
 	void doInvoke(GaeaContext context) {
 		logger.debug("------------------------------ begin request-----------------------------");
 
-		StringBuilder sbInvokerMsg = new StringBuilder();
 		StopWatch sw = context.getStopWatch();
 		Object response = null;
 		Protocol protocol = context.getGaeaRequest().getProtocol();
 		RequestProtocol request = (RequestProtocol) protocol.getSdpEntity();
 
 		try {
-
-			sbInvokerMsg.append("protocol version:");
-			sbInvokerMsg.append(protocol.getVersion());
-			sbInvokerMsg.append("\nfromIP:");
-			sbInvokerMsg.append(context.getChannel().getRemoteIP());
-			sbInvokerMsg.append("\nlookUP:");
-			sbInvokerMsg.append(request.getLookup()); //例如：NewsService
-			sbInvokerMsg.append("\nmethodName:"); //例如：getNewsByCateID
-			sbInvokerMsg.append(request.getMethodName());
-			sbInvokerMsg.append("\nparams:");
-
+			RequestDetail detail = new RequestDetail(protocol.getVersion(), context.getChannel().getRemoteIP(), request);
 			if (request.getParaKVList() != null) {
 				for (KeyValuePair kv : request.getParaKVList()) {
-					if (kv != null) {
-						sbInvokerMsg.append("\n--key:");
-						sbInvokerMsg.append(kv.getKey());
-						sbInvokerMsg.append("\n--value:");
-						sbInvokerMsg.append(kv.getValue());
-					} else {
+					if (kv == null) {
 						logger.error("KeyValuePair is null  Lookup:" + request.getLookup() + "--MethodName:" + request.getMethodName());
 					}
 				}
 			}
 
-			logger.debug(sbInvokerMsg.toString());
+			if (logger.isDebugEnabled()) {
+				logger.debug(detail.toString());
+			}
 			logger.debug("begin get proxy factory");
 
 			// get local proxy , 例如：ProxyFactory1609126340091
@@ -103,8 +118,8 @@ public abstract class InvokerBase implements IInvokerHandle {
 						"NotFoundServiceException"));
 			} else {
 				logger.debug("begin localProxy.invoke");
-				String swInvoderKey = "InvokeRealService_" + request.getLookup() + "." + request.getMethodName();
-				sw.startNew(swInvoderKey, sbInvokerMsg.toString());
+				String swInvoderKey = getSwKey(request.getLookup(), request.getMethodName());
+				sw.startNew(swInvoderKey, detail);
 				sw.setFromIP(context.getChannel().getRemoteIP());
 				sw.setLocalIP(context.getChannel().getLocalIP());
 
@@ -112,6 +127,11 @@ public abstract class InvokerBase implements IInvokerHandle {
 				GaeaResponse gaeaResponse = localProxy.invoke(context);
 
 				sw.stop(swInvoderKey);
+				if (RequestLog.sample(swInvoderKey)) {
+					// 参数可能很大或包含敏感信息,info级别只记录调用方,debug级别才输出参数
+					Object logDetail = logger.isDebugEnabled() ? detail : "fromIP::" + context.getChannel().getRemoteIP();
+					RequestLog.log(swInvoderKey, sw.getMapCounter().get(swInvoderKey).getExecuteTime(), logDetail);
+				}
 
 				logger.debug("end localProxy.invoke");
 				context.setGaeaResponse(gaeaResponse);
@@ -134,6 +154,70 @@ public abstract class InvokerBase implements IInvokerHandle {
 		logger.debug("---------------------------------- end --------------------------------");
 	}
 
+	/**
+	 * 获取缓存的StopWatch key
+	 */
+	private static String getSwKey(String lookup, String methodName) {
+		ConcurrentHashMap<String, String> methods = swKeys.get(lookup);
+		if (methods == null) {
+			methods = new ConcurrentHashMap<String, String>();
+			ConcurrentHashMap<String, String> old = swKeys.putIfAbsent(lookup, methods);
+			if (old != null) {
+				methods = old;
+			}
+		}
+		String key = methods.get(methodName);
+		if (key == null) {
+			key = "InvokeRealService_" + lookup + "." + methodName;
+			if (methods.size() < MAX_METHOD_COUNT) {
+				methods.put(methodName, key);
+			}
+		}
+		return key;
+	}
+
+	/**
+	 * 请求描述,只在输出日志或性能监控读取时才拼接字符串
+	 */
+	private static class RequestDetail {
+		
+		private final int version;
+		private final String fromIP;
+		private final RequestProtocol request;
+		
+		RequestDetail(int version, String fromIP, RequestProtocol request) {
+			this.version = version;
+			this.fromIP = fromIP;
+			this.request = request;
+		}
+		
+		@Override
+		public String toString() {
+			StringBuilder sbInvokerMsg = new StringBuilder();
+			sbInvokerMsg.append("protocol version:");
+			sbInvokerMsg.append(version);
+			sbInvokerMsg.append("\nfromIP:");
+			sbInvokerMsg.append(fromIP);
+			sbInvokerMsg.append("\nlookUP:");
+			sbInvokerMsg.append(request.getLookup()); //例如：NewsService
+			sbInvokerMsg.append("\nmethodName:"); //例如：getNewsByCateID
+			sbInvokerMsg.append(request.getMethodName());
+			sbInvokerMsg.append("\nparams:");
+			List<KeyValuePair> kvList = request.getParaKVList();
+			if (kvList != null) {
+				for (KeyValuePair kv : kvList) {
+					if (kv != null) {
+						sbInvokerMsg.append("\n--key:");
+						sbInvokerMsg.append(kv.getKey());
+						sbInvokerMsg.append("\n--value:");
+						sbInvokerMsg.append(kv.getValue());
+					}
+				}
+			}
+			return sbInvokerMsg.toString();
+		}
+	}
+
 	/**
 	 * create response message body
 	 * 
@@ -27,6 +27,11 @@ public class AsyncTask {
 	 */
 	private static final int DEFAULT_TIME_OUT = 2000;
 	
+	/**
+	 * 当前线程正在执行的任务
+	 */
+	private static final ThreadLocal<AsyncTask> current = new ThreadLocal<AsyncTask>();
+	
 	private int timeout;
 	
 	private int qtimeout;
@@ -35,6 +40,13 @@ public class AsyncTask {
 	
 	private IAsyncHandler handler;
 	
+	/**
+	 * 调用方放弃等待的时间,0为不限制
+	 */
+	private volatile long deadline = 0;
+	
+	private boolean finished = false;
+	
 
 	/**
 	 * 构造异步任务
@@ -92,4 +104,68 @@ public class AsyncTask {
 	public void setQtimeout(int qtimeout) {
 		this.qtimeout = qtimeout;
 	}
+	
+	public long getDeadline() {
+		return deadline;
+	}
+	
+	/**
+	 * 设置调用方剩余的等待时间,从任务加入队列时算起
+	 * @param budget 剩余时间(单位：豪秒),小于等于0时不限制
+	 */
+	public synchronized void setBudget(int budget) {
+		if(budget > 0) {
+			this.deadline = addTime + budget;
+			notifyAll();
+		}
+	}
+	
+	/**
+	 * 在队列中等待超时或者调用方已经放弃等待
+	 * @return
+	 */
+	public boolean isExpired() {
+		long now = System.currentTimeMillis();
+		return (now - addTime) > qtimeout || (deadline > 0 && now >= deadline);
+	}
+	
+	synchronized void finish() {
+		this.finished = true;
+		notifyAll();
+	}
+	
+	/**
+	 * 等待任务执行完成,最多等待timeout,执行中设置了deadline时最多等到deadline
+	 * @param timeout
+	 * @return false 超时
+	 * @throws InterruptedException
+	 */
+	synchronized boolean await(int timeout) throws InterruptedException {
+		long end = System.currentTimeMillis() + timeout;
+		while(!finished) {
+			long until = (deadline > 0 && deadline < end) ? deadline : end;
+			long wait = until - System.currentTimeMillis();
+			if(wait <= 0) {
+				return false;
+			}
+			wait(wait);
+		}
+		return true;
+	}
+	
+	/**
+	 * 获得当前线程正在执行的任务
+	 * @return 不在异步任务中执行时返回null
+	 */
+	public static AsyncTask current() {
+		return current.get();
+	}
+	
+	static void setCurrent(AsyncTask task) {
+		if(task == null) {
+			current.remove();
+		} else {
+			current.set(task);
+		}
+	}
 }
\ No newline at end of file
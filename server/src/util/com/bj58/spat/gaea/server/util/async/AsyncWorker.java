@@ -21,9 +21,7 @@
 package com.bj58.spat.gaea.server.util.async;
 
 import java.util.concurrent.Executor;
-import java.util.concurrent.TimeUnit;
 import org.apache.commons.logging.Log;
-import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeoutException;
 import org.apache.commons.logging.LogFactory;
 import com.bj58.spat.gaea.server.util.jsr166.LinkedTransferQueue;
@@ -91,11 +89,17 @@ class AsyncWorker extends Thread {
 		try {
 			task = taskQueue.take();
 			if(task != null){
-				if((System.currentTimeMillis() - task.getAddTime()) > task.getQtimeout()) {
+				if(task.isExpired()) {
 					task.getHandler().exceptionCaught(new TimeoutException("async task timeout!"));
 					return;
 				} else {
-					Object obj = task.getHandler().run();
+					Object obj = null;
+					AsyncTask.setCurrent(task);
+					try {
+						obj = task.getHandler().run();
+					} finally {
+						AsyncTask.setCurrent(null);
+					}
 					task.getHandler().messageReceived(obj);
 				}
 			}else{
@@ -114,27 +118,28 @@ class AsyncWorker extends Thread {
 		try {
 			final AsyncTask task = taskQueue.take();
 			if(task != null) {
-				if((System.currentTimeMillis() - task.getAddTime()) > task.getQtimeout()) {
+				if(task.isExpired()) {
 					task.getHandler().exceptionCaught(new TimeoutException("async wait task timeout!"));
 					return;
 				}else{
-					final CountDownLatch cdl = new CountDownLatch(1);
 					executor.execute(new Runnable(){
 							@Override
 							public void run() {
+								AsyncTask.setCurrent(task);
 								try {
 									Object obj = task.getHandler().run();
 									task.getHandler().messageReceived(obj);
 								} catch(Throwable ex) {
 									task.getHandler().exceptionCaught(ex);
 								} finally {
-									cdl.countDown();
+									AsyncTask.setCurrent(null);
+									task.finish();
 								}
 							}
 						}
 					);
-					cdl.await(getTimeout(task.getTimeout(), taskQueue.size()), TimeUnit.MILLISECONDS);
-					if(cdl.getCount() > 0) {
+					//执行中设置了调用方的deadline时,最多等到deadline
+					if(!task.await(getTimeout(task.getTimeout(), taskQueue.size()))) {
 						task.getHandler().exceptionCaught(new TimeoutException("async execute task timeout!"));
 					}
 				}